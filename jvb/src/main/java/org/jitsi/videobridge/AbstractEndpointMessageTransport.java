@@ -68,11 +68,18 @@ protected void notifyTransportChannelConnected()
      */
     public void onMessage(Object src, String msg)
     {
+        if (!acceptIncomingMessage())
+        {
+            return;
+        }
+
+        // Endpoint messages are only relayed, so avoid parsing their content unless we have to.
+        BridgeChannelMessage relayedMessage = EndpointMessage.parseForRelay(msg);
         BridgeChannelMessage message;
 
         try
         {
-            message = BridgeChannelMessage.parse(msg);
+            message = relayedMessage != null ? relayedMessage : BridgeChannelMessage.parse(msg);
         }
         catch (IOException ioe)
         {
@@ -82,16 +89,43 @@ public void onMessage(Object src, String msg)
 
         logger.debug(() -> "RECV: " + msg);
 
-        TaskPools.IO_POOL.submit(() ->
+        submitIncomingMessage(message, () ->
         {
-            BridgeChannelMessage response = handleMessage(message);
-            if (response != null)
+            try
             {
-                sendMessage(src, response);
+                BridgeChannelMessage response = handleMessage(message);
+                if (response != null)
+                {
+                    sendMessage(src, response);
+                }
+            }
+            catch (Exception e)
+            {
+                logger.warn("Failed to handle message: " + msg, e);
             }
         });
     }
 
+    /**
+     * Checks whether a newly received message should be handled, before it is parsed. Subclasses may override this
+     * to limit the rate of incoming messages.
+     */
+    protected boolean acceptIncomingMessage()
+    {
+        return true;
+    }
+
+    /**
+     * Schedules the handling of a received message. By default it is handled on {@link TaskPools#IO_POOL}.
+     *
+     * @param message the message that was received.
+     * @param handler handles {@code message} and sends the response, if any.
+     */
+    protected void submitIncomingMessage(@NotNull BridgeChannelMessage message, @NotNull Runnable handler)
+    {
+        TaskPools.IO_POOL.submit(handler);
+    }
+
     /**
      * Sends a specific message over the active transport channel of this
      * {@link EndpointMessageTransport}.
@@ -104,7 +138,7 @@ protected void sendMessage(BridgeChannelMessage msg)
 
     protected void sendMessage(Object dst, BridgeChannelMessage message)
     {
-        logger.debug(() -> "SEND: " + message.toJson());
+        logger.debug(() -> "SEND: " + message.toJsonForSending());
     }
 
     /**
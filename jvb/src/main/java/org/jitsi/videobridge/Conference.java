@@ -17,6 +17,7 @@
 
 import org.jetbrains.annotations.*;
 import org.jitsi.nlj.*;
+import org.jitsi.nlj.rtp.VideoRtpPacket;
 import org.jitsi.rtp.*;
 import org.jitsi.rtp.rtcp.rtcpfb.payload_specific_fb.*;
 import org.jitsi.rtp.rtp.*;
@@ -25,6 +26,7 @@
 import org.jitsi.utils.logging2.Logger;
 import org.jitsi.utils.logging2.LoggerImpl;
 import org.jitsi.utils.logging2.*;
+import org.jitsi.videobridge.cc.allocation.*;
 import org.jitsi.videobridge.message.*;
 import org.jitsi.videobridge.octo.*;
 import org.jitsi.videobridge.shim.*;
@@ -36,6 +38,7 @@
 import org.jxmpp.stringprep.*;
 
 import java.io.*;
+import java.time.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
@@ -78,6 +81,16 @@
 
     private final Object endpointsCacheLock = new Object();
 
+    /**
+     * The endpoints (local or Octo) by the SSRCs that they send. It is read
+     * on the packet path (e.g. to route keyframe requests) and only changes
+     * with signaling, so it is replaced rather than modified, while holding
+     * {@link #endpointsBySsrcLock}.
+     */
+    private volatile LongObjectHashMap<AbstractEndpoint> endpointsBySsrc = new LongObjectHashMap<>();
+
+    private final Object endpointsBySsrcLock = new Object();
+
     /**
      * The indicator which determines whether {@link #expire()} has been called
      * on this <tt>Conference</tt>.
@@ -155,6 +168,18 @@
      */
     private ConfOctoTransport tentacle;
 
+    /**
+     * The local endpoints which may want the video of each endpoint, used to
+     * avoid offering every video packet to every endpoint.
+     */
+    private final VideoRoutingTable videoRoutingTable = new VideoRoutingTable();
+
+    /**
+     * The snapshots of the layer bitrates of the sources in this conference, shared by the bandwidth allocators of
+     * all local endpoints.
+     */
+    private final LayerBitrateSnapshots layerBitrateSnapshots = new LayerBitrateSnapshots(Clock.systemUTC());
+
     /**
      * The task of updating the ordered list of endpoints in the conference. It runs periodically in order to adapt to
      * endpoints stopping or starting to their video streams (which affects the order).
@@ -257,6 +282,8 @@ public Statistics getStatistics()
      * case being a message that has originated from an endpoint (as opposed to
      * a message originating from the bridge and being sent to all endpoints in
      * the call, for that see {@link #broadcastMessage(BridgeChannelMessage)}.
+     * The message is serialized once and the result is shared by all
+     * receivers, so it must not be modified afterwards.
      *
      * @param msg the message to be sent
      * @param endpoints the list of <tt>Endpoint</tt>s to which the message will
@@ -564,12 +591,72 @@ private void updateStatisticsOnExpire()
      * stream with the specified <tt>ssrc</tt> and with the specified
      * <tt>mediaType</tt>; otherwise, <tt>null</tt>
      */
-    AbstractEndpoint findEndpointByReceiveSSRC(long receiveSSRC)
+    public AbstractEndpoint findEndpointByReceiveSSRC(long receiveSSRC)
+    {
+        return endpointsBySsrc.get(receiveSSRC);
+    }
+
+    /**
+     * Records that a specific endpoint sends an RTP stream with a specific
+     * SSRC. Does nothing if the endpoint has expired.
+     */
+    public void addReceiveSsrc(@NotNull AbstractEndpoint endpoint, long ssrc)
+    {
+        synchronized (endpointsBySsrcLock)
+        {
+            // The endpoint is marked expired before its SSRCs are removed
+            // (under this lock), so checking here means that a late
+            // association can not put an expired endpoint back in the index.
+            if (!endpoint.isExpired() && endpointsBySsrc.get(ssrc) != endpoint)
+            {
+                LongObjectHashMap<AbstractEndpoint> newEndpointsBySsrc = new LongObjectHashMap<>(endpointsBySsrc);
+                newEndpointsBySsrc.put(ssrc, endpoint);
+                endpointsBySsrc = newEndpointsBySsrc;
+            }
+        }
+    }
+
+    /**
+     * Replaces the set of SSRCs that a specific endpoint sends. Does nothing
+     * if the endpoint has expired.
+     */
+    public void setReceiveSsrcs(@NotNull AbstractEndpoint endpoint, @NotNull Collection<Long> ssrcs)
+    {
+        synchronized (endpointsBySsrcLock)
+        {
+            if (endpoint.isExpired())
+            {
+                return;
+            }
+            LongObjectHashMap<AbstractEndpoint> newEndpointsBySsrc = copyEndpointsBySsrcWithout(endpoint);
+            ssrcs.forEach(ssrc -> newEndpointsBySsrc.put(ssrc, endpoint));
+            endpointsBySsrc = newEndpointsBySsrc;
+        }
+    }
+
+    /**
+     * Removes all SSRCs of an endpoint (which has expired).
+     */
+    private void removeReceiveSsrcs(@NotNull AbstractEndpoint endpoint)
+    {
+        synchronized (endpointsBySsrcLock)
+        {
+            endpointsBySsrc = copyEndpointsBySsrcWithout(endpoint);
+        }
+    }
+
+    private LongObjectHashMap<AbstractEndpoint> copyEndpointsBySsrcWithout(AbstractEndpoint endpoint)
     {
-        return getEndpoints().stream()
-                .filter(ep -> ep.receivesSsrc(receiveSSRC))
-                .findFirst()
-                .orElse(null);
+        LongObjectHashMap<AbstractEndpoint> newEndpointsBySsrc
+            = new LongObjectHashMap<>(endpointsBySsrc.size());
+        endpointsBySsrc.forEach((ssrc, e) ->
+        {
+            if (e != endpoint)
+            {
+                newEndpointsBySsrc.put(ssrc, e);
+            }
+        });
+        return newEndpointsBySsrc;
     }
 
     /**
@@ -672,6 +759,23 @@ public void endpointSourcesChanged(AbstractEndpoint endpoint)
         lastNEndpointsChanged();
     }
 
+    /**
+     * Notifies this conference that the set of endpoints whose video a local
+     * endpoint is forwarding has changed.
+     *
+     * @param endpoint the local endpoint.
+     * @param forwardedEndpoints the IDs of the endpoints it now forwards.
+     */
+    void forwardedEndpointsChanged(Endpoint endpoint, Set<String> forwardedEndpoints)
+    {
+        // Ignore late notifications from endpoints which have already been
+        // removed.
+        if (endpointsById.get(endpoint.getId()) == endpoint)
+        {
+            videoRoutingTable.forwardedEndpointsChanged(endpoint, forwardedEndpoints);
+        }
+    }
+
     /**
      * Updates {@link #endpointsCache} with the current contents of
      * {@link #endpointsById}.
@@ -815,8 +919,14 @@ void endpointExpired(AbstractEndpoint endpoint)
         if (removedEndpoint != null)
         {
             updateEndpointsCache();
+            if (removedEndpoint instanceof Endpoint)
+            {
+                videoRoutingTable.removeReceiver((Endpoint) removedEndpoint);
+            }
         }
 
+        removeReceiveSsrcs(endpoint);
+
         endpointsById.forEach((i, senderEndpoint) -> senderEndpoint.removeReceiver(id));
 
         if (tentacle != null)
@@ -846,6 +956,10 @@ public void addEndpoint(AbstractEndpoint endpoint)
         final AbstractEndpoint replacedEndpoint;
         replacedEndpoint = endpointsById.put(endpoint.getId(), endpoint);
         updateEndpointsCache();
+        if (replacedEndpoint instanceof Endpoint)
+        {
+            videoRoutingTable.removeReceiver((Endpoint) replacedEndpoint);
+        }
 
         endpointsChanged();
 
@@ -943,13 +1057,19 @@ public ConferenceShim getShim()
     private void sendOut(PacketInfo packetInfo)
     {
         String sourceEndpointId = packetInfo.getEndpointId();
-        // We want to avoid calling 'clone' for the last receiver of this packet
-        // since it's unnecessary.  To do so, we'll wait before we clone and send
-        // to an interested handler until after we've determined another handler
-        // is also interested in the packet.  We'll give the last handler the
-        // original packet (without cloning).
+        // When more than one handler wants the packet, they share it and each
+        // one makes its own copy only when (and if) it needs to modify it,
+        // with the last one taking the original. We hand the packet to a
+        // handler only after we've found the next interested handler, so that
+        // the reference count already accounts for it.
         PotentialPacketHandler prevHandler = null;
-        for (Endpoint endpoint : endpointsCache)
+        SharedPacketInfo sharedPacket = null;
+        // Video is only offered to the endpoints which are forwarding the
+        // source, everything else to all endpoints.
+        List<Endpoint> candidates = packetInfo.getPacket() instanceof VideoRtpPacket
+            ? videoRoutingTable.getReceivers(sourceEndpointId)
+            : endpointsCache;
+        for (Endpoint endpoint : candidates)
         {
             if (endpoint.getId().equals(sourceEndpointId))
             {
@@ -960,7 +1080,7 @@ private void sendOut(PacketInfo packetInfo)
             {
                 if (prevHandler != null)
                 {
-                    prevHandler.send(packetInfo.clone());
+                    sharedPacket = share(prevHandler, packetInfo, sharedPacket);
                 }
                 prevHandler = endpoint;
             }
@@ -969,20 +1089,52 @@ private void sendOut(PacketInfo packetInfo)
         {
             if (prevHandler != null)
             {
-                prevHandler.send(packetInfo.clone());
+                sharedPacket = share(prevHandler, packetInfo, sharedPacket);
             }
             prevHandler = tentacle;
         }
 
-        if (prevHandler != null)
+        if (prevHandler == null)
+        {
+            // No one wanted the packet, so the buffer is now free!
+            ByteBufferPool.returnBuffer(packetInfo.getPacket().getBuffer());
+        }
+        else if (sharedPacket == null)
         {
             prevHandler.send(packetInfo);
         }
         else
         {
-            // No one wanted the packet, so the buffer is now free!
-            ByteBufferPool.returnBuffer(packetInfo.getPacket().getBuffer());
+            prevHandler.send(sharedPacket);
+        }
+    }
+
+    /**
+     * Hands a shared packet to {@code handler}, after adding a reference for
+     * the next handler.
+     *
+     * @return the shared packet, which is created on the first call.
+     */
+    private static SharedPacketInfo share(
+        PotentialPacketHandler handler,
+        PacketInfo packetInfo,
+        SharedPacketInfo sharedPacket)
+    {
+        if (sharedPacket == null)
+        {
+            sharedPacket = new SharedPacketInfo(packetInfo);
         }
+        sharedPacket.retain();
+        handler.send(sharedPacket);
+        return sharedPacket;
+    }
+
+    /**
+     * Gets the snapshots of the layer bitrates of the sources in this conference.
+     */
+    public LayerBitrateSnapshots getLayerBitrateSnapshots()
+    {
+        return layerBitrateSnapshots;
     }
 
     /**
@@ -1013,6 +1165,7 @@ public boolean isOctoEnabled()
     public void handleIncomingPacket(PacketInfo packetInfo)
     {
         Packet packet = packetInfo.getPacket();
+        ByteBufferPool.touch(packet.getBuffer(), "Conference.handleIncomingPacket");
         if (packet instanceof RtpPacket)
         {
             // This is identical to the default 'else' below, but it defined
@@ -1025,7 +1178,6 @@ else if (packet instanceof RtcpFbPliPacket || packet instanceof RtcpFbFirPacket)
                 ? ((RtcpFbPliPacket) packet).getMediaSourceSsrc()
                 : ((RtcpFbFirPacket) packet).getMediaSenderSsrc();
 
-            // XXX we could make this faster with a map
             AbstractEndpoint targetEndpoint = findEndpointByReceiveSSRC(mediaSsrc);
 
             PotentialPacketHandler pph = null;
@@ -1113,6 +1265,7 @@ public JSONObject getDebugState(boolean full, String endpointId)
             debugState.put(
                     "tentacle",
                     tentacle == null ? null : tentacle.getDebugState());
+            debugState.put("videoRoutingTable", videoRoutingTable.getDebugState());
         }
 
         JSONObject endpoints = new JSONObject();
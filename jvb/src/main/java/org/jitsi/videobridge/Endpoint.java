@@ -263,10 +263,12 @@ public Endpoint(
 
         creationTime = clock.instant();
         diagnosticContext = conference.newDiagnosticContext();
+        // Both pipelines of the endpoint run on the same executor.
+        ExecutorService executor = TaskPools.getCpuShard();
         transceiver = new Transceiver(
             id,
-            TaskPools.CPU_POOL,
-            TaskPools.CPU_POOL,
+            executor,
+            executor,
             TaskPools.SCHEDULED_POOL,
             diagnosticContext,
             logger,
@@ -300,6 +302,7 @@ public void allocationChanged(@NotNull BandwidthAllocation allocation)
             @Override
             public void forwardedEndpointsChanged(@NotNull Set<String> forwardedEndpoints)
             {
+                getConference().forwardedEndpointsChanged(Endpoint.this, forwardedEndpoints);
                 sendForwardedEndpointsMessage(forwardedEndpoints);
             }
 
@@ -320,7 +323,10 @@ public void keyframeNeeded(String endpointId, long ssrc)
         bitrateController = new BitrateController<>(
                 bcEventHandler,
                 conference::getEndpoints,
-                diagnosticContext, logger);
+                diagnosticContext,
+                logger,
+                Clock.systemUTC(),
+                conference.getLayerBitrateSnapshots());
 
         outgoingSrtpPacketQueue = new PacketInfoQueue(
             getClass().getSimpleName() + "-outgoing-packet-queue",
@@ -386,16 +392,14 @@ public void dataReceived(@NotNull byte[] data, int offset, int length, @NotNull
                     // DTLS transport is responsible for making its own copy, because it will manage its own
                     // buffers
                     dtlsTransport.dtlsDataReceived(data, offset, length);
+                    ByteBufferPool.returnBuffer(data);
                 }
                 else
                 {
-                    byte[] copy = ByteBufferPool.getBuffer(
-                        length +
-                            RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET +
-                            RtpPacket.BYTES_TO_LEAVE_AT_END_OF_PACKET
-                    );
-                    System.arraycopy(data, offset, copy, RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET, length);
-                    Packet pkt = new UnparsedPacket(copy, RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET, length);
+                    // The IceTransport leaves room before and after the data, and hands us ownership of the
+                    // buffer, so we can pass it on to the transceiver without a copy.
+                    ByteBufferPool.touch(data, "Endpoint.iceDataReceived");
+                    Packet pkt = new UnparsedPacket(data, offset, length);
                     PacketInfo pktInfo = new PacketInfo(pkt);
                     pktInfo.setReceivedTime(receivedTime.toEpochMilli());
                     transceiver.handleIncomingPacket(pktInfo);
@@ -584,6 +588,21 @@ else if (packet instanceof RtcpFbPliPacket || packet instanceof RtcpFbFirPacket)
         return false;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void send(SharedPacketInfo packetInfo)
+    {
+        if (isExpired())
+        {
+            // Don't copy a packet we're not going to send.
+            packetInfo.release();
+            return;
+        }
+        send(packetInfo.acquire());
+    }
+
     /**
      * TODO Brian
      */
@@ -591,12 +610,14 @@ else if (packet instanceof RtcpFbPliPacket || packet instanceof RtcpFbFirPacket)
     public void send(PacketInfo packetInfo)
     {
         Packet packet = packetInfo.getPacket();
+        ByteBufferPool.touch(packet.getBuffer(), "Endpoint.send");
         if (packet instanceof VideoRtpPacket)
         {
             boolean accepted = bitrateController.transformRtp(packetInfo);
             if (!accepted)
             {
                 logger.warn( "Dropping a packet which was supposed to be accepted:" + packet);
+                ByteBufferPool.returnBuffer(packet.getBuffer());
                 return;
             }
 
@@ -1183,7 +1204,7 @@ public void recreateMediaSources()
     @Override
     public boolean receivesSsrc(long ssrc)
     {
-        return transceiver.receivesSsrc(ssrc);
+        return getConference().findEndpointByReceiveSSRC(ssrc) == this;
     }
 
     /**
@@ -1192,8 +1213,13 @@ public boolean receivesSsrc(long ssrc)
     @Override
     public void addReceiveSsrc(long ssrc, MediaType mediaType)
     {
+        if (isExpired())
+        {
+            return;
+        }
         logger.debug(() -> "Adding receive ssrc " + ssrc + " of type " + mediaType);
         transceiver.addReceiveSsrc(ssrc, mediaType);
+        getConference().addReceiveSsrc(this, ssrc);
     }
 
     /**
@@ -1217,9 +1243,14 @@ public void onNewSsrcAssociation(
             long secondarySsrc,
             SsrcAssociationType type)
     {
+        if (isExpired())
+        {
+            return;
+        }
         if (endpointId.equalsIgnoreCase(getId()))
         {
             transceiver.addSsrcAssociation(new LocalSsrcAssociation(primarySsrc, secondarySsrc, type));
+            getConference().addReceiveSsrc(this, secondarySsrc);
         }
         else
         {
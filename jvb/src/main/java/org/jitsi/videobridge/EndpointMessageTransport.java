@@ -15,12 +15,15 @@
  */
 package org.jitsi.videobridge;
 
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.jetbrains.annotations.*;
 import org.jitsi.utils.logging2.*;
 import org.jitsi.videobridge.datachannel.*;
 import org.jitsi.videobridge.datachannel.protocol.*;
 import org.jitsi.videobridge.message.*;
 import org.jitsi.videobridge.octo.*;
+import org.jitsi.videobridge.util.SerialExecutor;
+import org.jitsi.videobridge.util.TaskPools;
 import org.jitsi.videobridge.websocket.*;
 import org.json.simple.*;
 
@@ -75,6 +78,46 @@
      */
     private final Map<String, AtomicLong> sentMessagesCounts = new ConcurrentHashMap<>();
 
+    /**
+     * The queue of outgoing messages, or {@code null} if messages are sent right away.
+     */
+    @Nullable
+    private final OutgoingMessageQueue outgoingQueue;
+
+    /**
+     * Handles the received messages on {@link TaskPools#MESSAGE_POOL}, one at a time and in the order in which they
+     * were received.
+     */
+    private final SerialExecutor incomingMessageExecutor = new SerialExecutor(
+        TaskPools.MESSAGE_POOL,
+        config.incomingMaxQueuedMessages(),
+        TaskPools.MESSAGE_QUEUE_DELAY_STATS);
+
+    /**
+     * Protects {@link #rateWindowStartMs} and {@link #rateWindowCount}.
+     */
+    private final Object rateLimitLock = new Object();
+
+    /**
+     * The start of the current one-second window of the incoming message rate limit, in milliseconds.
+     */
+    private long rateWindowStartMs = 0;
+
+    /**
+     * The number of messages accepted in the current window of the incoming message rate limit.
+     */
+    private int rateWindowCount = 0;
+
+    /**
+     * The number of received messages which were dropped because they exceeded the rate limit.
+     */
+    private final AtomicLong numIncomingRateLimited = new AtomicLong();
+
+    /**
+     * The number of received messages which were dropped because too many messages were waiting to be handled.
+     */
+    private final AtomicLong numIncomingQueueFull = new AtomicLong();
+
     @NotNull
     private final Endpoint endpoint;
 
@@ -96,6 +139,9 @@
         this.endpoint = endpoint;
         this.statisticsSupplier = statisticsSupplier;
         this.eventHandler = eventHandler;
+        this.outgoingQueue = config.outgoingQueueEnabled()
+            ? new OutgoingMessageQueue(config.outgoingQueueMaxSize(), TaskPools.IO_POOL, this::sendQueuedMessage)
+            : null;
     }
 
     /**
@@ -107,6 +153,55 @@ protected void notifyTransportChannelConnected()
         eventHandler.endpointMessageTransportConnected(endpoint);
     }
 
+    /**
+     * Accepts at most {@code max-rate} messages per second from the endpoint (if configured).
+     */
+    @Override
+    protected boolean acceptIncomingMessage()
+    {
+        int maxRate = config.incomingMaxRate();
+        if (maxRate <= 0)
+        {
+            return true;
+        }
+
+        long nowMs = System.currentTimeMillis();
+        synchronized (rateLimitLock)
+        {
+            if (nowMs - rateWindowStartMs >= 1000)
+            {
+                rateWindowStartMs = nowMs;
+                rateWindowCount = 0;
+            }
+            if (++rateWindowCount <= maxRate)
+            {
+                return true;
+            }
+        }
+        numIncomingRateLimited.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Handles the messages of the endpoint in order, on a bounded pool. Messages are dropped if too many of them are
+     * waiting to be handled.
+     */
+    @Override
+    protected void submitIncomingMessage(@NotNull BridgeChannelMessage message, @NotNull Runnable handler)
+    {
+        try
+        {
+            incomingMessageExecutor.execute(handler);
+        }
+        catch (RejectedExecutionException e)
+        {
+            if (numIncomingQueueFull.getAndIncrement() % 100 == 0)
+            {
+                logger.warn("Too many queued messages, dropping: " + message.getType());
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -158,7 +253,7 @@ else if (dst instanceof DataChannel)
      */
     private void sendMessage(DataChannel dst, BridgeChannelMessage message)
     {
-        dst.sendString(message.toJson());
+        dst.sendString(message.toJsonForSending());
         statisticsSupplier.get().totalDataChannelMessagesSent.incrementAndGet();
     }
 
@@ -172,7 +267,7 @@ private void sendMessage(ColibriWebSocket dst, BridgeChannelMessage message)
         // We'll use the async version of sendString since this may be called
         // from multiple threads.  It's just fire-and-forget though, so we
         // don't wait on the result
-        dst.getRemote().sendStringByFuture(message.toJson());
+        dst.getRemote().sendStringByFuture(message.toJsonForSending());
         statisticsSupplier.get().totalColibriWebSocketMessagesSent.incrementAndGet();
     }
 
@@ -195,7 +290,21 @@ public void onDataChannelMessage(DataChannelMessage dataChannelMessage)
     @Override
     protected void sendMessage(@NotNull BridgeChannelMessage msg)
     {
-        Object dst = getActiveTransportChannel();
+        if (outgoingQueue != null)
+        {
+            outgoingQueue.add(msg);
+        }
+        else
+        {
+            sendMessageOnActiveTransportChannel(msg, getActiveTransportChannel());
+        }
+    }
+
+    /**
+     * Sends a message over the active transport channel {@code dst}, if there is one.
+     */
+    private void sendMessageOnActiveTransportChannel(@NotNull BridgeChannelMessage msg, Object dst)
+    {
         if (dst == null)
         {
             logger.debug("No available transport channel, can't send a message");
@@ -210,6 +319,55 @@ protected void sendMessage(@NotNull BridgeChannelMessage msg)
         }
     }
 
+    /**
+     * Sends a message taken from {@link #outgoingQueue}. Messages sent over a web socket are written asynchronously,
+     * and the queue waits for the write to complete before it sends the next one, so that a slow receiver builds up
+     * its backlog in the (bounded) queue.
+     *
+     * @return {@code false} if the message is written asynchronously, and {@code onSent} will be called once the write
+     * completes; {@code true} otherwise.
+     */
+    private boolean sendQueuedMessage(@NotNull BridgeChannelMessage msg, @NotNull Runnable onSent)
+    {
+        Object dst = getActiveTransportChannel();
+        if (!(dst instanceof ColibriWebSocket))
+        {
+            sendMessageOnActiveTransportChannel(msg, dst);
+            return true;
+        }
+
+        super.sendMessage(dst, msg); // Log message
+        sentMessagesCounts.computeIfAbsent(
+                msg.getClass().getSimpleName(),
+                (k) -> new AtomicLong()).incrementAndGet();
+        try
+        {
+            ((ColibriWebSocket) dst).getRemote().sendString(msg.toJsonForSending(), new WriteCallback()
+            {
+                @Override
+                public void writeFailed(Throwable x)
+                {
+                    onSent.run();
+                }
+
+                @Override
+                public void writeSuccess()
+                {
+                    onSent.run();
+                }
+            });
+        }
+        catch (Exception e)
+        {
+            // The web socket was closed under our feet.
+            logger.debug(() -> "Failed to send a message on the web socket: " + e.getMessage());
+            numOutgoingMessagesDropped.incrementAndGet();
+            return true;
+        }
+        statisticsSupplier.get().totalColibriWebSocketMessagesSent.incrementAndGet();
+        return false;
+    }
+
     /**
      * @return the active transport channel for this
      * {@link EndpointMessageTransport} (either the {@link #webSocket}, or
@@ -321,6 +479,11 @@ public void webSocketClosed(ColibriWebSocket ws, int statusCode, String reason)
     @Override
     protected void close()
     {
+        if (outgoingQueue != null)
+        {
+            outgoingQueue.close();
+        }
+
         synchronized (webSocketSyncRoot)
         {
             if (webSocket != null)
@@ -390,11 +553,19 @@ public JSONObject getDebugState()
     {
         JSONObject debugState = super.getDebugState();
         debugState.put("numOutgoingMessagesDropped", numOutgoingMessagesDropped.get());
+        debugState.put("incoming_queue_size", incomingMessageExecutor.getQueueSize());
+        debugState.put("incoming_rate_limited", numIncomingRateLimited.get());
+        debugState.put("incoming_queue_full", numIncomingQueueFull.get());
 
         JSONObject sentCounts = new JSONObject();
         sentCounts.putAll(sentMessagesCounts);
         debugState.put("sent_counts", sentCounts);
 
+        if (outgoingQueue != null)
+        {
+            debugState.put("outgoing_queue", outgoingQueue.getDebugState());
+        }
+
         return debugState;
     }
 
@@ -502,8 +673,15 @@ public BridgeChannelMessage endpointMessage(EndpointMessage message)
         if (message.isBroadcast())
         {
             // Broadcast message to all local endpoints + octo.
-            targets = new LinkedList<>(conference.getLocalEndpoints());
-            targets.remove(endpoint);
+            List<Endpoint> localEndpoints = conference.getLocalEndpoints();
+            targets = new ArrayList<>(localEndpoints.size());
+            for (Endpoint localEndpoint : localEndpoints)
+            {
+                if (localEndpoint != endpoint)
+                {
+                    targets.add(localEndpoint);
+                }
+            }
             sendToOcto = true;
         }
         else
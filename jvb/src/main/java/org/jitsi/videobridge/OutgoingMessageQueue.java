@@ -0,0 +1,286 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.videobridge;
+
+import org.jetbrains.annotations.*;
+import org.jitsi.videobridge.message.*;
+import org.json.simple.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A queue of the messages to be sent to an endpoint over its bridge channel, which is bounded by the total size of the
+ * queued messages. Messages are sent one at a time, so that a slow receiver builds up its backlog here (where it is
+ * bounded) and not in the underlying transport.
+ *
+ * Messages which supersede the previous message of the same kind (e.g. a new dominant speaker) replace it if it hasn't
+ * been sent yet. Control messages are sent before the {@link EndpointMessage}s relayed from other endpoints, and when
+ * the queue is full, queued relayed messages are dropped to make room for control messages.
+ */
+class OutgoingMessageQueue
+{
+    /**
+     * The maximum total size of the queued messages (in bytes, as the length of their JSON).
+     */
+    private final int maxSizeBytes;
+
+    /**
+     * The executor that runs {@link #sendQueued()}.
+     */
+    @NotNull
+    private final Executor executor;
+
+    @NotNull
+    private final Sender sender;
+
+    /**
+     * The queued control messages (anything other than a relayed {@link EndpointMessage}).
+     */
+    private final Deque<Entry> controlMessages = new ArrayDeque<>();
+
+    /**
+     * The queued relayed {@link EndpointMessage}s.
+     */
+    private final Deque<Entry> relayedMessages = new ArrayDeque<>();
+
+    /**
+     * The queued messages which can be replaced by a later message, by their coalescing key
+     * (see {@link #getCoalescingKey(BridgeChannelMessage)}).
+     */
+    private final Map<Object, Entry> coalescableMessages = new HashMap<>();
+
+    /**
+     * The total size of the queued messages.
+     */
+    private int queuedBytes = 0;
+
+    /**
+     * Whether a message is being sent (or {@link #sendQueued()} has been scheduled).
+     */
+    private boolean sending = false;
+
+    private boolean closed = false;
+
+    private final AtomicLong numCoalesced = new AtomicLong();
+
+    /**
+     * The number of messages which were dropped because the queue was full or sending them failed, by message type.
+     */
+    private final Map<String, AtomicLong> droppedCounts = new ConcurrentHashMap<>();
+
+    OutgoingMessageQueue(int maxSizeBytes, @NotNull Executor executor, @NotNull Sender sender)
+    {
+        this.maxSizeBytes = maxSizeBytes;
+        this.executor = executor;
+        this.sender = sender;
+    }
+
+    /**
+     * Gets the key by which {@code message} replaces an earlier queued message, or {@code null} if it doesn't
+     * supersede earlier messages.
+     */
+    private static Object getCoalescingKey(@NotNull BridgeChannelMessage message)
+    {
+        if (message instanceof DominantSpeakerMessage
+            || message instanceof ForwardedEndpointsMessage
+            || message instanceof SenderVideoConstraintsMessage)
+        {
+            return message.getClass();
+        }
+        else if (message instanceof EndpointConnectionStatusMessage)
+        {
+            return Arrays.asList(message.getClass(), ((EndpointConnectionStatusMessage) message).getEndpoint());
+        }
+        return null;
+    }
+
+    /**
+     * Adds a message to the queue, replacing a message that it supersedes. If the queue is full the message is
+     * dropped, unless it is a control message and there are queued relayed messages which can be dropped instead.
+     */
+    void add(@NotNull BridgeChannelMessage message)
+    {
+        int size = message.toJsonForSending().length();
+        Object coalescingKey = getCoalescingKey(message);
+
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return;
+            }
+
+            if (coalescingKey != null)
+            {
+                Entry entry = coalescableMessages.get(coalescingKey);
+                if (entry != null)
+                {
+                    queuedBytes += size - entry.size;
+                    entry.message = message;
+                    entry.size = size;
+                    numCoalesced.incrementAndGet();
+                    return;
+                }
+            }
+
+            boolean isRelayed = message instanceof EndpointMessage;
+            if (!isRelayed)
+            {
+                while (queuedBytes + size > maxSizeBytes && !relayedMessages.isEmpty())
+                {
+                    Entry dropped = relayedMessages.removeFirst();
+                    queuedBytes -= dropped.size;
+                    countDropped(dropped.message);
+                }
+            }
+            if (queuedBytes + size > maxSizeBytes)
+            {
+                countDropped(message);
+                return;
+            }
+
+            Entry entry = new Entry(message, size, coalescingKey);
+            (isRelayed ? relayedMessages : controlMessages).addLast(entry);
+            if (coalescingKey != null)
+            {
+                coalescableMessages.put(coalescingKey, entry);
+            }
+            queuedBytes += size;
+
+            if (sending)
+            {
+                return;
+            }
+            sending = true;
+        }
+
+        executor.execute(this::sendQueued);
+    }
+
+    /**
+     * Sends the queued messages, until the queue is empty or a message is sent asynchronously (in which case sending
+     * resumes once it completes).
+     */
+    private void sendQueued()
+    {
+        while (true)
+        {
+            Entry entry;
+            synchronized (this)
+            {
+                entry = controlMessages.pollFirst();
+                if (entry == null)
+                {
+                    entry = relayedMessages.pollFirst();
+                }
+                if (entry == null)
+                {
+                    sending = false;
+                    return;
+                }
+                if (entry.coalescingKey != null)
+                {
+                    coalescableMessages.remove(entry.coalescingKey);
+                }
+                queuedBytes -= entry.size;
+            }
+
+            boolean sentSynchronously;
+            try
+            {
+                sentSynchronously = sender.send(entry.message, () -> executor.execute(this::sendQueued));
+            }
+            catch (RuntimeException e)
+            {
+                // The message is lost, but keep draining the queue. Otherwise nothing would ever be sent again.
+                countDropped(entry.message);
+                continue;
+            }
+            if (!sentSynchronously)
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops the queued messages, and any messages added later.
+     */
+    synchronized void close()
+    {
+        closed = true;
+        controlMessages.clear();
+        relayedMessages.clear();
+        coalescableMessages.clear();
+        queuedBytes = 0;
+    }
+
+    private void countDropped(@NotNull BridgeChannelMessage message)
+    {
+        droppedCounts.computeIfAbsent(message.getClass().getSimpleName(), k -> new AtomicLong()).incrementAndGet();
+    }
+
+    @SuppressWarnings("unchecked")
+    JSONObject getDebugState()
+    {
+        JSONObject debugState = new JSONObject();
+        synchronized (this)
+        {
+            debugState.put("queued_bytes", queuedBytes);
+            debugState.put("queued_messages", controlMessages.size() + relayedMessages.size());
+        }
+        debugState.put("num_coalesced", numCoalesced.get());
+        JSONObject dropped = new JSONObject();
+        dropped.putAll(droppedCounts);
+        debugState.put("dropped_counts", dropped);
+        return debugState;
+    }
+
+    /**
+     * Sends the messages taken from the queue.
+     */
+    interface Sender
+    {
+        /**
+         * Sends a message.
+         *
+         * @param onSent called when the message has been sent, if it is sent asynchronously.
+         * @return {@code true} if the message was sent (or dropped) synchronously, or {@code false} if it is being sent
+         * asynchronously, in which case {@code onSent} will be called when it completes. If it throws, the message is
+         * counted as dropped and the next one is sent.
+         */
+        boolean send(@NotNull BridgeChannelMessage message, @NotNull Runnable onSent);
+    }
+
+    private static class Entry
+    {
+        @NotNull
+        private BridgeChannelMessage message;
+
+        private int size;
+
+        private final Object coalescingKey;
+
+        private Entry(@NotNull BridgeChannelMessage message, int size, Object coalescingKey)
+        {
+            this.message = message;
+            this.size = size;
+            this.coalescingKey = coalescingKey;
+        }
+    }
+}
@@ -33,4 +33,17 @@
      * @param packet the RTP/RTCP packet
      */
     void send(PacketInfo packet);
+
+    /**
+     * Send the given RTP/RTCP packet, which is shared with other handlers.
+     * The handler gives up its reference to the shared packet, either by
+     * acquiring its own copy to send or by releasing it. By default the
+     * packet is always acquired.
+     *
+     * @param packet the shared RTP/RTCP packet
+     */
+    default void send(SharedPacketInfo packet)
+    {
+        send(packet.acquire());
+    }
 }
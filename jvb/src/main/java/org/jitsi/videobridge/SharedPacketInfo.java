@@ -0,0 +1,105 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.videobridge;
+
+import org.jetbrains.annotations.*;
+import org.jitsi.nlj.*;
+import org.jitsi.videobridge.util.*;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A reference-counted {@link PacketInfo} which is shared between several
+ * {@link PotentialPacketHandler}s. The packet must be treated as read-only
+ * while it is shared. Each holder gives up its reference by calling either
+ * {@link #acquire()}, which gives it a packet that it owns and can modify,
+ * or {@link #release()}, if it does not need the packet.
+ *
+ * A holder only pays for a copy of the packet when it acquires it while
+ * other holders still reference it, and the last holder takes the original.
+ * So a handler that ends up dropping the packet should release it without
+ * acquiring it first.
+ */
+public class SharedPacketInfo
+{
+    @NotNull
+    private final PacketInfo packetInfo;
+
+    /**
+     * The number of holders which have not yet acquired or released the
+     * packet.
+     */
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    /**
+     * Initializes a new instance with a single reference.
+     */
+    SharedPacketInfo(@NotNull PacketInfo packetInfo)
+    {
+        this.packetInfo = packetInfo;
+    }
+
+    /**
+     * Adds a reference, for a new holder.
+     */
+    void retain()
+    {
+        refCount.incrementAndGet();
+    }
+
+    /**
+     * Gets the shared packet, which must not be modified.
+     */
+    @NotNull
+    public PacketInfo get()
+    {
+        return packetInfo;
+    }
+
+    /**
+     * Gives up the caller's reference and returns a packet which the caller
+     * owns: the original one if the caller is the last holder, or a copy
+     * otherwise.
+     */
+    @NotNull
+    public PacketInfo acquire()
+    {
+        if (refCount.get() == 1)
+        {
+            // No one else can access the packet anymore.
+            refCount.set(0);
+            return packetInfo;
+        }
+
+        // Copy before giving up our reference, so that the original is not
+        // handed out (and modified) while we're copying it.
+        PacketInfo copy = packetInfo.clone();
+        release();
+        return copy;
+    }
+
+    /**
+     * Gives up the caller's reference without taking the packet, returning
+     * its buffer to the pool if the caller was the last holder.
+     */
+    public void release()
+    {
+        if (refCount.decrementAndGet() == 0)
+        {
+            ByteBufferPool.returnBuffer(packetInfo.getPacket().getBuffer());
+        }
+    }
+}
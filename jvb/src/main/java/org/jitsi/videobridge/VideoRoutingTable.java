@@ -0,0 +1,188 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.videobridge;
+
+import org.jetbrains.annotations.*;
+import org.jitsi.videobridge.util.*;
+import org.json.simple.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps track of which local {@link Endpoint}s may want the video of each
+ * source endpoint in a {@link Conference}, so that video packets only need to
+ * be offered to those endpoints rather than to every endpoint in the
+ * conference.
+ *
+ * An endpoint is a receiver of a source while the source is in the
+ * endpoint's set of forwarded endpoints (as decided by its bitrate
+ * controller). The routes are a superset of the endpoints which will accept
+ * the packets, and {@link Endpoint#wants(org.jitsi.nlj.PacketInfo)} still
+ * has the final word.
+ *
+ * When a source stops being forwarded to an endpoint, the endpoint remains a
+ * receiver for {@link #LINGER_MS}. This allows its source projections to see
+ * packets with a suspended target, which is how they learn that they need a
+ * keyframe before resuming.
+ */
+class VideoRoutingTable
+{
+    /**
+     * How long to keep routing a source to an endpoint after the endpoint
+     * stops forwarding it.
+     */
+    static final long LINGER_MS = 1000;
+
+    /**
+     * For each source endpoint ID, the receivers and the time (in millis)
+     * until which they should be kept, or {@link Long#MAX_VALUE} if they are
+     * currently forwarding the source. Guarded by {@code this}.
+     */
+    private final Map<String, Map<Endpoint, Long>> receivers = new HashMap<>();
+
+    /**
+     * A read-only snapshot of {@link #receivers}, which is what the packet
+     * path reads.
+     */
+    private volatile Map<String, List<Endpoint>> routes = Collections.emptyMap();
+
+    /**
+     * The number of times the routes were rebuilt.
+     */
+    private long numRebuilds = 0;
+
+    /**
+     * Gets the endpoints which may want the video of a given source endpoint.
+     */
+    @NotNull
+    List<Endpoint> getReceivers(String sourceEndpointId)
+    {
+        List<Endpoint> r = routes.get(sourceEndpointId);
+        return r == null ? Collections.emptyList() : r;
+    }
+
+    /**
+     * Notifies this table that the set of endpoints which {@code receiver}
+     * forwards has changed.
+     */
+    synchronized void forwardedEndpointsChanged(
+        @NotNull Endpoint receiver,
+        @NotNull Set<String> forwardedEndpoints)
+    {
+        long now = System.currentTimeMillis();
+        boolean lingering = false;
+
+        for (Map.Entry<String, Map<Endpoint, Long>> entry : receivers.entrySet())
+        {
+            Map<Endpoint, Long> sourceReceivers = entry.getValue();
+            if (forwardedEndpoints.contains(entry.getKey()))
+            {
+                sourceReceivers.put(receiver, Long.MAX_VALUE);
+            }
+            else if (Objects.equals(sourceReceivers.get(receiver), Long.MAX_VALUE))
+            {
+                sourceReceivers.put(receiver, now + LINGER_MS);
+                lingering = true;
+            }
+        }
+        for (String sourceEndpointId : forwardedEndpoints)
+        {
+            receivers.computeIfAbsent(sourceEndpointId, k -> new HashMap<>())
+                .put(receiver, Long.MAX_VALUE);
+        }
+
+        rebuild(now);
+
+        if (lingering)
+        {
+            TaskPools.SCHEDULED_POOL.schedule(this::purge, LINGER_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Removes an endpoint (which has expired) from all routes.
+     */
+    synchronized void removeReceiver(@NotNull Endpoint receiver)
+    {
+        boolean removed = false;
+        for (Map<Endpoint, Long> sourceReceivers : receivers.values())
+        {
+            removed |= sourceReceivers.remove(receiver) != null;
+        }
+        if (removed)
+        {
+            rebuild(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Removes the receivers whose linger time has passed.
+     */
+    private synchronized void purge()
+    {
+        rebuild(System.currentTimeMillis());
+    }
+
+    /**
+     * Drops expired receivers and updates {@link #routes}.
+     */
+    private void rebuild(long now)
+    {
+        Map<String, List<Endpoint>> newRoutes = new HashMap<>();
+        Iterator<Map.Entry<String, Map<Endpoint, Long>>> it = receivers.entrySet().iterator();
+        while (it.hasNext())
+        {
+            Map.Entry<String, Map<Endpoint, Long>> entry = it.next();
+            Map<Endpoint, Long> sourceReceivers = entry.getValue();
+            sourceReceivers.values().removeIf(until -> until <= now);
+            if (sourceReceivers.isEmpty())
+            {
+                it.remove();
+            }
+            else
+            {
+                newRoutes.put(
+                    entry.getKey(),
+                    Collections.unmodifiableList(new ArrayList<>(sourceReceivers.keySet())));
+            }
+        }
+
+        routes = newRoutes;
+        numRebuilds++;
+    }
+
+    /**
+     * Gets a JSON representation of the parts of this object's state that
+     * are deemed useful for debugging.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized JSONObject getDebugState()
+    {
+        JSONObject debugState = new JSONObject();
+        debugState.put("num_rebuilds", numRebuilds);
+        JSONObject routesJson = new JSONObject();
+        receivers.forEach((sourceEndpointId, sourceReceivers) ->
+        {
+            JSONObject receiversJson = new JSONObject();
+            sourceReceivers.forEach((receiver, until) ->
+                receiversJson.put(receiver.getId(), until == Long.MAX_VALUE ? "forwarding" : "lingering"));
+            routesJson.put(sourceEndpointId, receiversJson);
+        });
+        debugState.put("routes", routesJson);
+        return debugState;
+    }
+}
@@ -19,6 +19,8 @@
 import kotlin.*;
 import org.jetbrains.annotations.*;
 import org.jitsi.nlj.*;
+import org.jitsi.nlj.stats.DelayStats;
+import org.jitsi.nlj.util.OrderedJsonObject;
 import org.jitsi.utils.*;
 import org.jitsi.utils.event.*;
 import org.jitsi.utils.logging.*;
@@ -32,6 +34,8 @@
 import java.lang.SuppressWarnings;
 import java.time.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.function.*;
 import java.util.stream.*;
 
@@ -43,6 +47,45 @@
  */
 public class BandwidthAllocator<T extends MediaSourceContainer>
 {
+    /**
+     * The time (in milliseconds) it takes to run the allocation algorithm, over all instances.
+     */
+    private static final DelayStats updateTimeStats = new DelayStats(new long[] { 0, 1, 5, 20, 100 });
+
+    /**
+     * The number of times the allocation algorithm ran, over all instances.
+     */
+    private static final LongAdder numUpdates = new LongAdder();
+
+    /**
+     * The number of bandwidth changes which did not require running the allocation algorithm, over all instances.
+     */
+    private static final LongAdder numUpdatesSkipped = new LongAdder();
+
+    /**
+     * The number of triggers which were coalesced into an already scheduled update, over all instances.
+     */
+    private static final LongAdder numTriggersCoalesced = new LongAdder();
+
+    /**
+     * How long an allocation which gives every source its ideal layer is reused on bandwidth changes, before we run
+     * the algorithm again to account for changes in the bitrates of the layers.
+     */
+    private static final Duration IDEAL_ALLOCATION_MAX_AGE = Duration.ofSeconds(1);
+
+    /**
+     * Gets the statistics of bandwidth allocation over all instances.
+     */
+    public static OrderedJsonObject getStatsJson()
+    {
+        OrderedJsonObject stats = new OrderedJsonObject();
+        stats.put("num_updates", numUpdates.sum());
+        stats.put("num_updates_skipped", numUpdatesSkipped.sum());
+        stats.put("num_triggers_coalesced", numTriggersCoalesced.sum());
+        stats.put("update_time_ms", updateTimeStats.toJson());
+        return stats;
+    }
+
     /**
      * Returns a boolean that indicates whether or not the current bandwidth estimation (in bps) has changed above the
      * configured threshold with respect to the previous bandwidth estimation.
@@ -82,13 +125,13 @@ private static boolean bweChangeIsLargerThanThreshold(long previousBwe, long cur
     /**
      * The estimated available bandwidth in bits per second.
      */
-    private long bweBps = -1;
+    private volatile long bweBps = -1;
 
     /**
      * The list of endpoints ids ordered by speech activity.
      */
     @NotNull
-    private List<String> sortedEndpointIds = Collections.emptyList();
+    private volatile List<String> sortedEndpointIds = Collections.emptyList();
 
     /**
      * Provide the current list of endpoints (in no particular order).
@@ -120,7 +163,44 @@ private static boolean bweChangeIsLargerThanThreshold(long previousBwe, long cur
     /**
      * The allocations settings signalled by the receiver.
      */
-    private AllocationSettings allocationSettings = new AllocationSettings();
+    private volatile AllocationSettings allocationSettings = new AllocationSettings();
+
+    /**
+     * The window within which triggers for an update are coalesced into a single update, which runs on
+     * {@link #updateExecutor}. If zero, updates run right away on the thread which triggered them.
+     */
+    private final Duration coalescingWindow;
+
+    /**
+     * Schedules the coalesced updates (usually {@link TaskPools#SCHEDULED_POOL}).
+     */
+    private final ScheduledExecutorService updateScheduler;
+
+    /**
+     * Runs the coalesced updates (usually {@link TaskPools#CPU_POOL}).
+     */
+    private final Executor updateExecutor;
+
+    /**
+     * Guards {@link #updateScheduled}, {@link #scheduledUpdateBandwidthOnly} and {@link #numTriggersCoalescedHere}.
+     * It is never held while running the algorithm, so that the threads which trigger updates don't block.
+     */
+    private final Object scheduledUpdateLock = new Object();
+
+    /**
+     * Whether an update has been scheduled, and has not started running yet.
+     */
+    private boolean updateScheduled = false;
+
+    /**
+     * Whether the scheduled update was only triggered by bandwidth changes (see {@link #bandwidthUpdate()}).
+     */
+    private boolean scheduledUpdateBandwidthOnly = false;
+
+    /**
+     * The number of triggers which were coalesced into an already scheduled update by this instance.
+     */
+    private long numTriggersCoalescedHere = 0;
 
     /**
      * The last time {@link BandwidthAllocator#update()} was called.
@@ -133,20 +213,70 @@ private static boolean bweChangeIsLargerThanThreshold(long previousBwe, long cur
     @NotNull
     private BandwidthAllocation allocation = new BandwidthAllocation(Collections.emptySet());
 
+    /**
+     * The available bandwidth (in bps) with which {@link #allocation} was computed, if it gives every source its ideal
+     * layer, or -1 if it was limited by the available bandwidth (or oversends). More bandwidth can not improve such an
+     * allocation, so while the available bandwidth does not drop below this value we don't need to run the algorithm
+     * on bandwidth changes.
+     */
+    private long idealAllocationBps = -1;
+
+    /**
+     * The time the last update took (in nanoseconds).
+     */
+    private long lastUpdateDurationNs = -1;
+
     private final DiagnosticContext diagnosticContext;
 
+    /**
+     * The snapshots of the layer bitrates of the conference's sources (usually shared with the allocators of the other
+     * receivers in the conference).
+     */
+    @NotNull
+    private final LayerBitrateSnapshots layerBitrateSnapshots;
+
     BandwidthAllocator(
             EventHandler eventHandler,
             Supplier<List<T>> endpointsSupplier,
             Supplier<Boolean> trustBwe,
             Logger parentLogger,
             DiagnosticContext diagnosticContext,
-            Clock clock)
+            Clock clock,
+            @NotNull LayerBitrateSnapshots layerBitrateSnapshots)
+    {
+        this(
+                eventHandler,
+                endpointsSupplier,
+                trustBwe,
+                parentLogger,
+                diagnosticContext,
+                clock,
+                layerBitrateSnapshots,
+                BitrateControllerConfig.allocationCoalescingWindow(),
+                TaskPools.SCHEDULED_POOL,
+                TaskPools.CPU_POOL);
+    }
+
+    BandwidthAllocator(
+            EventHandler eventHandler,
+            Supplier<List<T>> endpointsSupplier,
+            Supplier<Boolean> trustBwe,
+            Logger parentLogger,
+            DiagnosticContext diagnosticContext,
+            Clock clock,
+            @NotNull LayerBitrateSnapshots layerBitrateSnapshots,
+            @NotNull Duration coalescingWindow,
+            @NotNull ScheduledExecutorService updateScheduler,
+            @NotNull Executor updateExecutor)
     {
         this.logger = parentLogger.createChildLogger(BandwidthAllocator.class.getName());
         this.clock = clock;
         this.trustBwe = trustBwe;
         this.diagnosticContext = diagnosticContext;
+        this.layerBitrateSnapshots = layerBitrateSnapshots;
+        this.coalescingWindow = coalescingWindow;
+        this.updateScheduler = updateScheduler;
+        this.updateExecutor = updateExecutor;
 
         this.endpointsSupplier = endpointsSupplier;
         eventEmitter.addHandler(eventHandler);
@@ -166,6 +296,9 @@ JSONObject getDebugState()
         debugState.put("bweBps", bweBps);
         debugState.put("allocationSettings", allocationSettings.toString());
         debugState.put("effectiveConstraints", effectiveConstraints);
+        debugState.put("idealAllocationBps", idealAllocationBps);
+        debugState.put("lastUpdateDurationNs", lastUpdateDurationNs);
+        debugState.put("numTriggersCoalesced", numTriggersCoalescedHere);
         return debugState;
     }
 
@@ -206,8 +339,26 @@ void bandwidthChanged(long newBandwidthBps)
             logger.debug(() -> "new bandwidth is " + newBandwidthBps + ", updating");
 
             bweBps = newBandwidthBps;
-            update();
+            triggerUpdate(true);
+        }
+    }
+
+    /**
+     * Runs the bandwidth allocation algorithm after a change in the bandwidth estimation, unless the change can not
+     * affect the result: if the last allocation gave every source its ideal layer, it stays the same for as long as
+     * the available bandwidth doesn't drop (and the bitrates of the layers don't change, so we only rely on this for
+     * {@link #IDEAL_ALLOCATION_MAX_AGE}).
+     */
+    private synchronized void bandwidthUpdate()
+    {
+        if (idealAllocationBps >= 0
+                && getAvailableBandwidth() >= idealAllocationBps
+                && Duration.between(lastUpdateTime, clock.instant()).compareTo(IDEAL_ALLOCATION_MAX_AGE) < 0)
+        {
+            numUpdatesSkipped.increment();
+            return;
         }
+        update();
     }
 
     /**
@@ -216,13 +367,13 @@ void bandwidthChanged(long newBandwidthBps)
      *
      * @param conferenceEndpoints the IDs of the conference endpoints ordered by speech activity.
      */
-    synchronized void endpointOrderingChanged(List<String> conferenceEndpoints)
+    void endpointOrderingChanged(List<String> conferenceEndpoints)
     {
         logger.debug(() -> "Endpoint ordering has changed, updating.");
 
         // TODO: Maybe suppress calling update() unless the order actually changed?
         sortedEndpointIds = conferenceEndpoints != null ? conferenceEndpoints : Collections.emptyList();
-        update();
+        triggerUpdate(false);
     }
 
     /**
@@ -232,7 +383,70 @@ synchronized void endpointOrderingChanged(List<String> conferenceEndpoints)
     void update(AllocationSettings allocationSettings)
     {
         this.allocationSettings = allocationSettings;
-        update();
+        triggerUpdate(false);
+    }
+
+    /**
+     * Runs the bandwidth allocation algorithm (or {@link #bandwidthUpdate()} if {@code bandwidthOnly}), either right
+     * away or, if {@link #coalescingWindow} is set, once the window after the first trigger elapses. All triggers
+     * which arrive in the meantime are served by the same update.
+     *
+     * @param bandwidthOnly whether the trigger is a change in the available bandwidth.
+     */
+    private void triggerUpdate(boolean bandwidthOnly)
+    {
+        if (coalescingWindow.isZero())
+        {
+            if (bandwidthOnly)
+            {
+                bandwidthUpdate();
+            }
+            else
+            {
+                update();
+            }
+            return;
+        }
+
+        synchronized (scheduledUpdateLock)
+        {
+            if (updateScheduled)
+            {
+                scheduledUpdateBandwidthOnly &= bandwidthOnly;
+                numTriggersCoalescedHere++;
+                numTriggersCoalesced.increment();
+                return;
+            }
+            updateScheduled = true;
+            scheduledUpdateBandwidthOnly = bandwidthOnly;
+        }
+
+        updateScheduler.schedule(
+                () -> updateExecutor.execute(this::runScheduledUpdate),
+                coalescingWindow.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the update scheduled by {@link #triggerUpdate(boolean)}.
+     */
+    private synchronized void runScheduledUpdate()
+    {
+        boolean bandwidthOnly;
+        synchronized (scheduledUpdateLock)
+        {
+            bandwidthOnly = scheduledUpdateBandwidthOnly;
+            updateScheduled = false;
+        }
+
+        if (bandwidthOnly)
+        {
+            bandwidthUpdate();
+        }
+        else
+        {
+            update();
+        }
     }
 
     /**
@@ -240,6 +454,7 @@ void update(AllocationSettings allocationSettings)
      */
     private synchronized void update()
     {
+        long startNs = System.nanoTime();
         lastUpdateTime = clock.instant();
 
         // Order the endpoints by selection, followed by speech activity.
@@ -270,6 +485,10 @@ private synchronized void update()
                 return Unit.INSTANCE;
             });
         }
+
+        lastUpdateDurationNs = System.nanoTime() - startNs;
+        numUpdates.increment();
+        updateTimeStats.addDelay(lastUpdateDurationNs / 1_000_000);
     }
 
     private List<String> getSelectedEndpoints()
@@ -298,10 +517,12 @@ private List<String> getSelectedEndpoints()
 
         if (sourceBitrateAllocations.isEmpty())
         {
+            idealAllocationBps = getAvailableBandwidth();
             return new BandwidthAllocation(Collections.emptySet());
         }
 
-        long maxBandwidth = getAvailableBandwidth();
+        long availableBandwidth = getAvailableBandwidth();
+        long maxBandwidth = availableBandwidth;
         long oldMaxBandwidth = -1;
 
         int[] oldTargetIndices = new int[sourceBitrateAllocations.size()];
@@ -366,6 +587,9 @@ private List<String> getSelectedEndpoints()
             numAllocationsWithVideo = newNumAllocationsWithVideo;
         }
 
+        boolean allIdeal = !oversending && sourceBitrateAllocations.stream().allMatch(SingleSourceAllocation::isIdeal);
+        idealAllocationBps = allIdeal ? availableBandwidth : -1;
+
         return new BandwidthAllocation(
                 sourceBitrateAllocations.stream().map(SingleSourceAllocation::getResult).collect(Collectors.toSet()),
                 oversending);
@@ -399,7 +623,7 @@ private List<String> getSelectedEndpoints()
                                     effectiveConstraints.get(endpoint.getId()),
                                     allocationSettings.getOnStageEndpoints().contains(endpoint.getId()),
                                     diagnosticContext,
-                                    clock));
+                                    layerBitrateSnapshots));
                 }
             }
         }
@@ -416,7 +640,14 @@ void maybeUpdate()
                 .compareTo(BitrateControllerConfig.maxTimeBetweenCalculations()) > 0)
         {
             logger.debug("Forcing an update");
-            TaskPools.CPU_POOL.submit((Runnable) this::update);
+            if (coalescingWindow.isZero())
+            {
+                TaskPools.CPU_POOL.submit((Runnable) this::update);
+            }
+            else
+            {
+                triggerUpdate(false);
+            }
         }
     }
 
@@ -27,6 +27,7 @@
 import org.jitsi.utils.logging2.Logger;
 import org.jitsi.videobridge.cc.AdaptiveSourceProjection;
 import org.jitsi.videobridge.cc.RewriteException;
+import org.jitsi.videobridge.util.LongObjectHashMap;
 import org.json.simple.*;
 
 import java.time.*;
@@ -53,9 +54,23 @@
 
     /**
      * The {@link AdaptiveSourceProjection}s that this instance is managing, keyed
-     * by the SSRCs of the associated {@link MediaSourceDesc}.
+     * by the SSRCs of the associated {@link MediaSourceDesc}. It is read for
+     * every video packet and only modified when a new source is allocated, so
+     * it is copy-on-write: modifications are made to a copy (while holding
+     * {@link #adaptiveSourceProjectionMapLock}) which then replaces the map.
      */
-    private final Map<Long, AdaptiveSourceProjection> adaptiveSourceProjectionMap = new ConcurrentHashMap<>();
+    private volatile LongObjectHashMap<SsrcProjection> adaptiveSourceProjectionMap = new LongObjectHashMap<>();
+
+    private final Object adaptiveSourceProjectionMapLock = new Object();
+
+    /**
+     * The entry of the last packet that {@link #accept(PacketInfo)} accepted. A
+     * packet which is accepted is usually transformed right after, so this
+     * saves {@link #transformRtp(PacketInfo)} the lookup. Entries are never
+     * removed from {@link #adaptiveSourceProjectionMap}, so this is valid for
+     * any packet with the same SSRC, even if it was set by another thread.
+     */
+    private volatile SsrcProjection lastAccepted = null;
 
     private final DiagnosticContext diagnosticContext;
     private final EventEmitter<BitrateController.EventHandler> eventEmitter;
@@ -86,13 +101,17 @@ boolean transformRtp(@NotNull PacketInfo packetInfo)
             firstMediaMs = clock.instant().toEpochMilli();
         }
 
-        Long ssrc = videoPacket.getSsrc();
-        AdaptiveSourceProjection adaptiveSourceProjection = adaptiveSourceProjectionMap.get(ssrc);
-
-        if (adaptiveSourceProjection == null)
+        long ssrc = videoPacket.getSsrc();
+        SsrcProjection ssrcProjection = lastAccepted;
+        if (ssrcProjection == null || ssrcProjection.ssrc != ssrc)
         {
-            return false;
+            ssrcProjection = adaptiveSourceProjectionMap.get(ssrc);
+            if (ssrcProjection == null)
+            {
+                return false;
+            }
         }
+        AdaptiveSourceProjection adaptiveSourceProjection = ssrcProjection.projection;
 
         try
         {
@@ -126,16 +145,24 @@ boolean accept(@NotNull PacketInfo packetInfo)
         VideoRtpPacket videoRtpPacket = packetInfo.packetAs();
         long ssrc = videoRtpPacket.getSsrc();
 
-        AdaptiveSourceProjection adaptiveSourceProjection = adaptiveSourceProjectionMap.get(ssrc);
+        SsrcProjection ssrcProjection = adaptiveSourceProjectionMap.get(ssrc);
 
-        if (adaptiveSourceProjection == null)
+        if (ssrcProjection == null)
         {
             logger.debug(() -> "Dropping an RTP packet, because the SSRC has not been signaled:" + ssrc);
             numDroppedPacketsUnknownSsrc.incrementAndGet();
             return false;
         }
 
-        return adaptiveSourceProjection.accept(packetInfo);
+        if (!ssrcProjection.projection.accept(packetInfo))
+        {
+            return false;
+        }
+        if (lastAccepted != ssrcProjection)
+        {
+            lastAccepted = ssrcProjection;
+        }
+        return true;
     }
 
     /**
@@ -148,9 +175,9 @@ boolean accept(RtcpSrPacket rtcpSrPacket)
     {
         long ssrc = rtcpSrPacket.getSenderSsrc();
 
-        AdaptiveSourceProjection adaptiveSourceProjection = adaptiveSourceProjectionMap.get(ssrc);
+        SsrcProjection ssrcProjection = adaptiveSourceProjectionMap.get(ssrc);
 
-        if (adaptiveSourceProjection == null)
+        if (ssrcProjection == null)
         {
             // This is probably for an audio stream. In any case, if it's for a stream which we are not forwarding it
             // will be stripped off at a later stage (in RtcpSrUpdater).
@@ -158,16 +185,16 @@ boolean accept(RtcpSrPacket rtcpSrPacket)
         }
 
         // We only accept SRs for the SSRC that we're forwarding with.
-        return ssrc == adaptiveSourceProjection.getTargetSsrc();
+        return ssrc == ssrcProjection.projection.getTargetSsrc();
     }
 
     boolean transformRtcp(RtcpSrPacket rtcpSrPacket)
     {
         long ssrc = rtcpSrPacket.getSenderSsrc();
 
-        AdaptiveSourceProjection adaptiveSourceProjection = adaptiveSourceProjectionMap.get(ssrc);
+        SsrcProjection ssrcProjection = adaptiveSourceProjectionMap.get(ssrc);
 
-        return adaptiveSourceProjection != null && adaptiveSourceProjection.rewriteRtcp(rtcpSrPacket);
+        return ssrcProjection != null && ssrcProjection.projection.rewriteRtcp(rtcpSrPacket);
     }
 
     /**
@@ -184,14 +211,13 @@ private AdaptiveSourceProjection lookupOrCreateAdaptiveSourceProjection(SingleAl
             return null;
         }
 
-        synchronized (adaptiveSourceProjectionMap)
+        synchronized (adaptiveSourceProjectionMapLock)
         {
-            AdaptiveSourceProjection adaptiveSourceProjection
-                    = adaptiveSourceProjectionMap.get(source.getPrimarySSRC());
+            SsrcProjection existing = adaptiveSourceProjectionMap.get(source.getPrimarySSRC());
 
-            if (adaptiveSourceProjection != null)
+            if (existing != null)
             {
-                return adaptiveSourceProjection;
+                return existing.projection;
             }
 
             RtpEncodingDesc[] rtpEncodings = source.getRtpEncodings();
@@ -209,7 +235,7 @@ private AdaptiveSourceProjection lookupOrCreateAdaptiveSourceProjection(SingleAl
             // creating local final variables and pass that to the lambda function
             // in order to avoid that.
             final long targetSSRC = source.getPrimarySSRC();
-            adaptiveSourceProjection
+            AdaptiveSourceProjection adaptiveSourceProjection
                     = new AdaptiveSourceProjection(
                     diagnosticContext,
                     source,
@@ -223,10 +249,13 @@ private AdaptiveSourceProjection lookupOrCreateAdaptiveSourceProjection(SingleAl
             logger.debug(() -> "new source projection for " + source);
 
             // Route all encodings to the specified bitrate controller.
+            LongObjectHashMap<SsrcProjection> newMap = new LongObjectHashMap<>(adaptiveSourceProjectionMap);
             for (RtpEncodingDesc rtpEncoding: rtpEncodings)
             {
-                adaptiveSourceProjectionMap.put(rtpEncoding.getPrimarySSRC(), adaptiveSourceProjection);
+                long ssrc = rtpEncoding.getPrimarySSRC();
+                newMap.put(ssrc, new SsrcProjection(ssrc, adaptiveSourceProjection));
             }
+            adaptiveSourceProjectionMap = newMap;
 
             return adaptiveSourceProjection;
         }
@@ -241,11 +270,6 @@ long timeSinceFirstMedia()
         return clock.instant().toEpochMilli() - firstMediaMs;
     }
 
-    private Map<Long, AdaptiveSourceProjection> getAdaptiveSourceProjectionMap()
-    {
-        return adaptiveSourceProjectionMap;
-    }
-
     void addPayloadType(PayloadType payloadType)
     {
         payloadTypes.put(payloadType.getPt(), payloadType);
@@ -258,10 +282,8 @@ JSONObject getDebugState()
         debugState.put("numDroppedPacketsUnknownSsrc", numDroppedPacketsUnknownSsrc.intValue());
 
         JSONObject adaptiveSourceProjectionsJson = new JSONObject();
-        for (Map.Entry<Long, AdaptiveSourceProjection> entry : adaptiveSourceProjectionMap.entrySet())
-        {
-            adaptiveSourceProjectionsJson.put(entry.getKey(), entry.getValue().getDebugState());
-        }
+        adaptiveSourceProjectionMap.forEach((ssrc, ssrcProjection) ->
+                adaptiveSourceProjectionsJson.put(ssrc, ssrcProjection.projection.getDebugState()));
         debugState.put("adaptiveSourceProjectionMap", adaptiveSourceProjectionsJson);
 
         return debugState;
@@ -274,10 +296,8 @@ void allocationChanged(@NotNull BandwidthAllocation allocation)
     {
         if (allocation.getAllocations().isEmpty())
         {
-            for (AdaptiveSourceProjection adaptiveSourceProjection : getAdaptiveSourceProjectionMap().values())
-            {
-                adaptiveSourceProjection.setTargetIndex(RtpLayerDesc.SUSPENDED_INDEX);
-            }
+            adaptiveSourceProjectionMap.forEach((ssrc, ssrcProjection) ->
+                    ssrcProjection.projection.setTargetIndex(RtpLayerDesc.SUSPENDED_INDEX));
         }
         else
         {
@@ -297,4 +317,21 @@ void allocationChanged(@NotNull BandwidthAllocation allocation)
             }
         }
     }
+
+    /**
+     * An {@link AdaptiveSourceProjection} and one of the SSRCs routed to it.
+     */
+    private static class SsrcProjection
+    {
+        private final long ssrc;
+
+        @NotNull
+        private final AdaptiveSourceProjection projection;
+
+        private SsrcProjection(long ssrc, @NotNull AdaptiveSourceProjection projection)
+        {
+            this.ssrc = ssrc;
+            this.projection = projection;
+        }
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.videobridge.cc.allocation;
+
+import org.jetbrains.annotations.*;
+import org.jitsi.nlj.*;
+import org.jitsi.nlj.util.*;
+
+import java.time.*;
+import java.util.*;
+
+/**
+ * Snapshots of the bitrates of the layers of the media sources in a conference. They are shared by the
+ * {@link BandwidthAllocator}s of all receivers in the conference, so that the bitrates of a sender's layers are
+ * computed once every {@link #MAX_AGE}, instead of once for every receiver's allocation.
+ *
+ * This class is thread safe. The snapshots are immutable.
+ */
+public class LayerBitrateSnapshots
+{
+    /**
+     * How long a snapshot is used before the bitrates are computed again.
+     */
+    static final Duration MAX_AGE = Duration.ofMillis(100);
+
+    private final Clock clock;
+
+    /**
+     * The latest snapshot of each source. Synchronized on itself. The keys are weak, so that the sources of expired
+     * endpoints don't need to be removed explicitly.
+     */
+    private final Map<MediaSourceDesc, Snapshot> snapshots = new WeakHashMap<>();
+
+    public LayerBitrateSnapshots(@NotNull Clock clock)
+    {
+        this.clock = clock;
+    }
+
+    /**
+     * Gets a recent snapshot of the bitrates of the layers of {@code source}, taking a new one if the last one is older
+     * than {@link #MAX_AGE}.
+     */
+    @NotNull
+    Snapshot get(@NotNull MediaSourceDesc source)
+    {
+        long nowMs = clock.instant().toEpochMilli();
+        Snapshot snapshot;
+        synchronized (snapshots)
+        {
+            snapshot = snapshots.get(source);
+        }
+        if (snapshot != null && nowMs - snapshot.timeMs < MAX_AGE.toMillis())
+        {
+            return snapshot;
+        }
+
+        // Several allocators may race to replace an old snapshot, which is harmless.
+        snapshot = take(source, nowMs);
+        synchronized (snapshots)
+        {
+            snapshots.put(source, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Takes a new snapshot of the bitrates of the layers of {@code source}.
+     */
+    @NotNull
+    private static Snapshot take(@NotNull MediaSourceDesc source, long nowMs)
+    {
+        Collection<RtpLayerDesc> sourceLayers = source.getRtpLayers();
+        RtpLayerDesc[] layers = new RtpLayerDesc[sourceLayers.size()];
+        Bandwidth[] bitrates = new Bandwidth[layers.length];
+        boolean anyActive = false;
+        int i = 0;
+        for (RtpLayerDesc layer : sourceLayers)
+        {
+            layers[i] = layer;
+            bitrates[i] = layer.getBitrate(nowMs);
+            anyActive |= bitrates[i].getBps() > 0;
+            i++;
+        }
+        return new Snapshot(nowMs, layers, bitrates, anyActive);
+    }
+
+    /**
+     * The bitrates of the layers of a source at a specific point in time.
+     */
+    static class Snapshot
+    {
+        private final long timeMs;
+
+        /**
+         * The layers of the source, in the order of {@link MediaSourceDesc#getRtpLayers()}.
+         */
+        final RtpLayerDesc[] layers;
+
+        /**
+         * The bitrate of each of {@link #layers}.
+         */
+        final Bandwidth[] bitrates;
+
+        /**
+         * Whether any of the layers has a non-zero bitrate.
+         */
+        final boolean anyActive;
+
+        private Snapshot(long timeMs, RtpLayerDesc[] layers, Bandwidth[] bitrates, boolean anyActive)
+        {
+            this.timeMs = timeMs;
+            this.layers = layers;
+            this.bitrates = bitrates;
+            this.anyActive = anyActive;
+        }
+    }
+}
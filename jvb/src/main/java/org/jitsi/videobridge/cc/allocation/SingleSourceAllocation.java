@@ -21,7 +21,6 @@
 import org.jitsi.utils.logging.*;
 import org.jitsi.videobridge.cc.config.*;
 
-import java.time.Clock;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -79,7 +78,7 @@ class SingleSourceAllocation {
             VideoConstraints constraints,
             boolean onStage,
             DiagnosticContext diagnosticContext,
-            Clock clock)
+            LayerBitrateSnapshots layerBitrateSnapshots)
     {
         this.endpointId = endpointId;
         this.constraints = constraints;
@@ -93,14 +92,15 @@ class SingleSourceAllocation {
             return;
         }
 
-        long nowMs = clock.instant().toEpochMilli();
-        boolean noActiveLayers = source.getRtpLayers().stream().noneMatch(l -> l.getBitrate(nowMs).getBps() > 0);
+        LayerBitrateSnapshots.Snapshot layerBitrates = layerBitrateSnapshots.get(source);
+        boolean noActiveLayers = !layerBitrates.anyActive;
         List<LayerSnapshot> ratesList = new ArrayList<>();
         // Initialize the list of layers to be considered. These are the layers that satisfy the constraints, with
         // a couple of exceptions (see comments below).
         int ratedPreferredIdx = 0;
-        for (RtpLayerDesc layer : source.getRtpLayers())
+        for (int layerIdx = 0; layerIdx < layerBitrates.layers.length; layerIdx++)
         {
+            RtpLayerDesc layer = layerBitrates.layers[layerIdx];
 
             int idealHeight = constraints.getMaxHeight();
             // Skip layers that do not satisfy the constraints. If no layers satisfy the constraints, add the lowest
@@ -138,7 +138,7 @@ class SingleSourceAllocation {
                     || (lessThanOrEqualIdealResolution && atLeastPreferredFps))
                     || ratesList.isEmpty())
             {
-                Bandwidth layerBitrate = layer.getBitrate(nowMs);
+                Bandwidth layerBitrate = layerBitrates.bitrates[layerIdx];
                 // No active layers usually happens when the source has just been signaled and we haven't received
                 // any packets yet. Add the layers here, so one gets selected and we can start forwarding sooner.
                 if (noActiveLayers || layerBitrate.getBps() > 0)
@@ -240,6 +240,14 @@ long getTargetBitrate()
         return targetLayer != null ? (long) targetLayer.bitrate.getBps() : 0;
     }
 
+    /**
+     * Whether the target layer is the ideal layer, i.e. more bandwidth would not improve this allocation.
+     */
+    boolean isIdeal()
+    {
+        return targetIdx == layers.length - 1;
+    }
+
     private LayerSnapshot getTargetLayer()
     {
         return targetIdx != -1 ? layers[targetIdx] : null;
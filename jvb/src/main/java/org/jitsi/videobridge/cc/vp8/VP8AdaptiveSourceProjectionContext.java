@@ -25,6 +25,7 @@
 import org.jitsi.utils.logging.*;
 import org.jitsi.utils.logging2.Logger;
 import org.jitsi.videobridge.cc.*;
+import org.jitsi.videobridge.util.LongObjectHashMap;
 import org.json.simple.*;
 
 import java.util.*;
@@ -42,10 +43,13 @@
     private final Logger logger;
 
     /**
-     * A map that stores the per-encoding VP8 frame maps.
+     * A map that stores the per-encoding VP8 frame maps, keyed by SSRC. It is
+     * only modified (in {@link #accept}) when a new encoding is seen, but it is
+     * also read by {@link #rewriteRtp}, which does not lock, so it is
+     * copy-on-write.
      */
-    private final Map<Long, VP8FrameMap>
-        vp8FrameMaps = new HashMap<>();
+    private volatile LongObjectHashMap<VP8FrameMap>
+        vp8FrameMaps = new LongObjectHashMap<>();
 
     /**
      * The {@link VP8QualityFilter} instance that does quality filtering on the
@@ -111,8 +115,16 @@ private VP8Frame lookupVP8Frame(@NotNull Vp8Packet vp8Packet)
     private VP8FrameMap.FrameInsertionResult insertPacketInMap(
         @NotNull Vp8Packet vp8Packet)
     {
-        VP8FrameMap frameMap = vp8FrameMaps.computeIfAbsent(vp8Packet.getSsrc(),
-            ssrc -> new VP8FrameMap(logger));
+        long ssrc = vp8Packet.getSsrc();
+        VP8FrameMap frameMap = vp8FrameMaps.get(ssrc);
+        if (frameMap == null)
+        {
+            frameMap = new VP8FrameMap(logger);
+            LongObjectHashMap<VP8FrameMap> newFrameMaps
+                = new LongObjectHashMap<>(vp8FrameMaps);
+            newFrameMaps.put(ssrc, frameMap);
+            vp8FrameMaps = newFrameMaps;
+        }
         /* TODO: add more context (ssrc?) to frame map's logger? */
 
         return frameMap.insertPacket(vp8Packet);
@@ -122,7 +134,7 @@ private VP8FrameMap.FrameInsertionResult insertPacketInMap(
      * Find the previous frame before the given one.
      */
     @Nullable
-    private synchronized VP8Frame prevFrame(@NotNull VP8Frame frame)
+    private VP8Frame prevFrame(@NotNull VP8Frame frame)
     {
         VP8FrameMap frameMap = vp8FrameMaps.get(frame.getSsrc());
         if (frameMap == null)
@@ -137,7 +149,7 @@ private synchronized VP8Frame prevFrame(@NotNull VP8Frame frame)
      * Find the next frame after the given one.
      */
     @Nullable
-    private synchronized VP8Frame nextFrame(@NotNull VP8Frame frame)
+    private VP8Frame nextFrame(@NotNull VP8Frame frame)
     {
         VP8FrameMap frameMap = vp8FrameMaps.get(frame.getSsrc());
         if (frameMap == null)
@@ -729,13 +741,13 @@ public synchronized JSONObject getDebugState()
                 VP8AdaptiveSourceProjectionContext.class.getSimpleName());
 
         JSONArray mapSizes = new JSONArray();
-        for (Map.Entry<Long, VP8FrameMap> entry: vp8FrameMaps.entrySet())
+        vp8FrameMaps.forEach((ssrc, frameMap) ->
         {
             JSONObject sizeInfo = new JSONObject();
-            sizeInfo.put("ssrc", entry.getKey());
-            sizeInfo.put("size", entry.getValue().size());
+            sizeInfo.put("ssrc", ssrc);
+            sizeInfo.put("size", frameMap.size());
             mapSizes.add(sizeInfo);
-        }
+        });
         debugState.put(
                 "vp8FrameMaps", mapSizes);
         debugState.put("vp8QualityFilter", vp8QualityFilter.getDebugState());
@@ -18,11 +18,10 @@
 import org.jetbrains.annotations.*;
 import org.jitsi.nlj.codec.vp8.*;
 import org.jitsi.nlj.rtp.codec.vp8.*;
-import org.jitsi.nlj.util.*;
 import org.jitsi.rtp.util.*;
 import org.jitsi.utils.logging2.*;
 
-import java.time.*;
+import java.util.concurrent.atomic.*;
 import java.util.function.*;
 
 import static java.lang.Integer.max;
@@ -30,6 +29,10 @@
 
 /**
  * A history of recent frames on a VP8 stream.
+ *
+ * Packets must be inserted, and the history navigated (with {@link #nextFrame(VP8Frame)}, {@link #prevFrame(VP8Frame)}
+ * and their variants) by a single thread at a time. {@link #findFrame(Vp8Packet)} does not lock and can be called
+ * concurrently with them from any thread.
  */
 public class VP8FrameMap
 {
@@ -51,7 +54,7 @@ public VP8FrameMap(
     }
 
     /** Find a frame in the frame map, based on a packet. */
-    public synchronized VP8Frame findFrame(@NotNull Vp8Packet packet)
+    public VP8Frame findFrame(@NotNull Vp8Packet packet)
     {
         return frameHistory.get(packet.getPictureId());
     }
@@ -124,7 +127,7 @@ private boolean isLargeJump(@NotNull Vp8Packet packet)
      * @param packet The packet to insert.
      * @return What happened.  null if insertion failed.
      */
-    public synchronized FrameInsertionResult insertPacket(@NotNull Vp8Packet packet)
+    public FrameInsertionResult insertPacket(@NotNull Vp8Packet packet)
     {
         int pictureId = packet.getPictureId();
 
@@ -186,43 +189,43 @@ public synchronized FrameInsertionResult insertPacket(@NotNull Vp8Packet packet)
     }
 
     @Nullable
-    public synchronized VP8Frame nextFrame(@NotNull VP8Frame frame)
+    public VP8Frame nextFrame(@NotNull VP8Frame frame)
     {
         return frameHistory.findAfter(frame, (VP8Frame f) -> true );
     }
 
     @Nullable
-    public synchronized VP8Frame nextFrameWith(@NotNull VP8Frame frame, Predicate<VP8Frame> pred)
+    public VP8Frame nextFrameWith(@NotNull VP8Frame frame, Predicate<VP8Frame> pred)
     {
         return frameHistory.findAfter(frame, pred);
     }
 
     @Nullable
-    public synchronized VP8Frame findNextTl0(@NotNull VP8Frame frame)
+    public VP8Frame findNextTl0(@NotNull VP8Frame frame)
     {
         return nextFrameWith(frame, VP8Frame::isTL0);
     }
 
     @Nullable
-    public synchronized VP8Frame findNextAcceptedFrame(@NotNull VP8Frame frame)
+    public VP8Frame findNextAcceptedFrame(@NotNull VP8Frame frame)
     {
         return nextFrameWith(frame, VP8Frame::isAccepted);
     }
 
     @Nullable
-    public synchronized VP8Frame prevFrame(@NotNull VP8Frame frame)
+    public VP8Frame prevFrame(@NotNull VP8Frame frame)
     {
         return frameHistory.findBefore(frame, (VP8Frame f) -> true );
     }
 
     @Nullable
-    public synchronized VP8Frame prevFrameWith(@NotNull VP8Frame frame, Predicate<VP8Frame> pred)
+    public VP8Frame prevFrameWith(@NotNull VP8Frame frame, Predicate<VP8Frame> pred)
     {
         return frameHistory.findBefore(frame, pred);
     }
 
     @Nullable
-    public synchronized VP8Frame findPrevAcceptedFrame(@NotNull VP8Frame frame)
+    public VP8Frame findPrevAcceptedFrame(@NotNull VP8Frame frame)
     {
         return prevFrameWith(frame, VP8Frame::isAccepted);
     }
@@ -268,11 +271,29 @@ public boolean isReset()
         }
     }
 
-    private static class FrameHistory extends ArrayCache<VP8Frame>
+    /**
+     * A ring buffer of frames, indexed by their extended picture IDs.
+     *
+     * Each slot holds an immutable {@link Slot} which records the index it was written for, so that {@link #get(int)}
+     * can run without locking concurrently with {@link #insert(int, VP8Frame)}: a reader which finds a slot that has
+     * been reused for a different frame sees a different index, and treats the frame as unknown. Inserting (and
+     * {@link #findBefore}/{@link #findAfter}, which use {@link #firstIndex}) must be done by a single thread at a time.
+     */
+    private static class FrameHistory
     {
+        private final AtomicReferenceArray<Slot> slots;
+
+        private final int size;
+
+        /**
+         * The highest index inserted so far, or -1.
+         */
+        private volatile int lastIndex = -1;
+
         FrameHistory(int size)
         {
-            super(size, (k) -> k, false, Clock.systemUTC());
+            this.size = size;
+            this.slots = new AtomicReferenceArray<>(size);
         }
 
         int numCached = 0;
@@ -294,49 +315,62 @@ public VP8Frame get(int pictureId)
          */
         private VP8Frame getIndex(int index)
         {
-            if (index <= getLastIndex() - getSize())
+            int lastIndex = this.lastIndex;
+            if (lastIndex == -1 || index > lastIndex || index <= lastIndex - size)
             {
                 /* We don't want to remember old frames even if they're still
                    tracked; their neighboring frames may have been evicted,
                    so findBefore / findAfter will return bogus data. */
                 return null;
             }
-            ArrayCache<VP8Frame>.Container c = getContainer(index);
-            if (c == null)
+            Slot slot = slots.get(Math.floorMod(index, size));
+            if (slot == null || slot.index != index)
             {
                 return null;
             }
-            return c.getItem();
+            return slot.frame;
         }
 
         /** Get the latest frame in the tracker. */
         private VP8Frame getLatestFrame()
         {
-            return getIndex(getLastIndex());
+            return getIndex(lastIndex);
+        }
+
+        private int getLastIndex()
+        {
+            return lastIndex;
+        }
+
+        private int getSize()
+        {
+            return size;
         }
 
         public boolean insert(int pictureId, VP8Frame frame)
         {
             int index = indexTracker.update(pictureId);
-            boolean ret = super.insertItem(frame, index);
-            if (ret)
+            int lastIndex = this.lastIndex;
+            if (lastIndex != -1 && index <= lastIndex - size)
             {
-                numCached++;
-                if (firstIndex == -1 || index < firstIndex)
-                {
-                    firstIndex = index;
-                }
+                /* Too old. */
+                return false;
             }
-            return ret;
-        }
 
-        /**
-         * Called when an item in the cache is replaced/discarded.
-         */
-        @Override
-        protected void discardItem(VP8Frame frame)
-        {
-            numCached--;
+            Slot oldSlot = slots.getAndSet(Math.floorMod(index, size), new Slot(index, frame));
+            if (oldSlot == null)
+            {
+                numCached++;
+            }
+            if (index > lastIndex)
+            {
+                this.lastIndex = index;
+            }
+            if (firstIndex == -1 || index < firstIndex)
+            {
+                firstIndex = index;
+            }
+            return true;
         }
 
         @Nullable
@@ -391,21 +425,49 @@ private VP8Frame doFind(Predicate<VP8Frame> pred, int startIndex, int endIndex,
             return null;
         }
 
+        /**
+         * A frame and the index it was inserted with.
+         */
+        private static class Slot
+        {
+            private final int index;
+
+            private final VP8Frame frame;
+
+            private Slot(int index, VP8Frame frame)
+            {
+                this.index = index;
+                this.frame = frame;
+            }
+        }
+
         /** Like Rfc3711IndexTracker, but for picture IDs (so with a rollover
          * of 0x8000).
          */
         private static class PictureIdIndexTracker
         {
-            private int roc = 0;
-            private int highestSeqNumReceived = -1;
+            /**
+             * The rollover counter (in the high 32 bits) and the highest picture ID received, or -1 (in the low 32
+             * bits). They are published together, so that {@link #interpret(int)} can run concurrently with updates.
+             */
+            private volatile long state = pack(0, -1);
+
+            private static long pack(int roc, int highestSeqNumReceived)
+            {
+                return ((long) roc << 32) | (highestSeqNumReceived & 0xFFFF_FFFFL);
+            }
 
             private int getIndex(int seqNum, boolean updateRoc)
             {
+                long state = this.state;
+                int roc = (int) (state >> 32);
+                int highestSeqNumReceived = (int) state;
+
                 if (highestSeqNumReceived == -1)
                 {
                     if (updateRoc)
                     {
-                        highestSeqNumReceived = seqNum;
+                        this.state = pack(roc, seqNum);
                     }
                     return seqNum;
                 }
@@ -433,6 +495,14 @@ else if (delta > 0 && seqNum < highestSeqNumReceived)
                 {
                     highestSeqNumReceived = seqNum;
                 }
+                if (updateRoc)
+                {
+                    long newState = pack(roc, highestSeqNumReceived);
+                    if (newState != state)
+                    {
+                        this.state = newState;
+                    }
+                }
 
                 return 0x8000 * v + seqNum;
             }
@@ -452,11 +522,11 @@ public int interpret(int seq)
              */
             public void resetAt(int seq)
             {
-                int delta = Vp8Utils.getExtendedPictureIdDelta(seq, highestSeqNumReceived);
+                long state = this.state;
+                int delta = Vp8Utils.getExtendedPictureIdDelta(seq, (int) state);
                 if (delta < 0)
                 {
-                    roc++;
-                    highestSeqNumReceived = seq;
+                    this.state = pack((int) (state >> 32) + 1, seq);
                 }
                 getIndex(seq, true);
             }
@@ -25,6 +25,7 @@
 import org.jitsi.utils.queue.*;
 import org.jitsi.utils.stats.*;
 import org.jitsi.videobridge.*;
+import org.jitsi.videobridge.cc.allocation.*;
 import org.jitsi.videobridge.message.*;
 import org.jitsi.videobridge.octo.config.*;
 import org.jitsi.videobridge.transport.octo.*;
@@ -91,10 +92,15 @@
 
     /**
      * Handlers for incoming Octo media packets, looked up by the
-     * source endpoint ID field in the Octo header.
+     * source endpoint ID field in the Octo header (in numeric form). The map
+     * is read for every packet, so it is replaced with a modified copy when
+     * a handler is added or removed, under
+     * {@link #incomingPacketHandlersLock}.
      */
-    private final Map<String, IncomingOctoEpPacketHandler> incomingPacketHandlers =
-        new ConcurrentHashMap<>();
+    private volatile LongObjectHashMap<RegisteredHandler> incomingPacketHandlers =
+        new LongObjectHashMap<>();
+
+    private final Object incomingPacketHandlersLock = new Object();
 
     /**
      * Count the number of dropped packets and exceptions.
@@ -108,6 +114,26 @@
     private final Map<String, PacketInfoQueue> outgoingPacketQueues =
         new ConcurrentHashMap<>();
 
+    /**
+     * Whether to relay the video of a local endpoint to a remote bridge only
+     * if, and in the layers that, the remote bridge has asked for.
+     */
+    private final boolean demandDrivenForwarding = OctoConfig.config.getDemandDrivenForwarding();
+
+    /**
+     * The maximum video height that each remote bridge needs from each local
+     * endpoint (by local endpoint ID and then by relay ID). This is the
+     * maximum over the receivers on the remote bridge, which it advertises
+     * with {@link AddReceiverMessage}.
+     */
+    private final Map<String, Map<String, Integer>> remoteDemand = new ConcurrentHashMap<>();
+
+    /**
+     * The remote bridges which advertise their demand. We keep relaying all
+     * video to the others (e.g. those running an older version).
+     */
+    private final Set<String> demandAdvertisingBridges = ConcurrentHashMap.newKeySet();
+
     /**
      * An {@link OctoTransceiver} to handle packets which originate from
      * a remote bridge (and have a special 'source endpoint ID').
@@ -239,7 +265,136 @@ else if(remoteBridges.isEmpty())
 
     private void remoteRelayRemoved(String relayId)
     {
+        SocketAddress address = remoteBridges.get(relayId);
+        if (address != null)
+        {
+            bridgeOctoTransport.removeTarget(address);
+        }
         conference.getLocalEndpoints().forEach(e -> e.removeReceiver(relayId));
+        demandAdvertisingBridges.remove(relayId);
+        remoteDemand.values().forEach(demand -> demand.remove(relayId));
+    }
+
+    /**
+     * Notifies this instance that a remote bridge needs video from a local
+     * endpoint with certain constraints.
+     *
+     * @param relayId the ID of the remote bridge.
+     * @param endpointId the ID of the local endpoint.
+     * @param videoConstraints the max constraints of the receivers on the
+     * remote bridge, or {@code null} if it no longer needs anything.
+     */
+    void remoteDemandChanged(
+        @NotNull String relayId,
+        @NotNull String endpointId,
+        VideoConstraints videoConstraints)
+    {
+        demandAdvertisingBridges.add(relayId);
+        if (videoConstraints == null)
+        {
+            Map<String, Integer> demand = remoteDemand.get(endpointId);
+            if (demand != null)
+            {
+                demand.remove(relayId);
+            }
+        }
+        else
+        {
+            remoteDemand.computeIfAbsent(endpointId, k -> new ConcurrentHashMap<>())
+                .put(relayId, videoConstraints.getMaxHeight());
+        }
+    }
+
+    /**
+     * Gets the remote bridges to relay a packet to. Video from a local
+     * endpoint is only relayed to the remote bridges which need it, and the
+     * encodings with a higher resolution than a remote bridge needs are not
+     * relayed to it (except for the lowest encoding, which its receivers
+     * fall back to even if it exceeds their constraints).
+     */
+    private Collection<SocketAddress> getTargets(PacketInfo packetInfo)
+    {
+        Map<String, SocketAddress> remoteBridges = this.remoteBridges;
+        if (!demandDrivenForwarding
+            || demandAdvertisingBridges.isEmpty()
+            || !(packetInfo.getPacket() instanceof VideoRtpPacket))
+        {
+            return remoteBridges.values();
+        }
+
+        Map<String, Integer> demand = remoteDemand.getOrDefault(packetInfo.getEndpointId(), Collections.emptyMap());
+        List<SocketAddress> targets = new ArrayList<>(remoteBridges.size());
+        int height = 0;
+        boolean heightKnown = false;
+        for (Map.Entry<String, SocketAddress> remoteBridge : remoteBridges.entrySet())
+        {
+            String relayId = remoteBridge.getKey();
+            if (demandAdvertisingBridges.contains(relayId))
+            {
+                Integer maxHeight = demand.get(relayId);
+                if (maxHeight == null || maxHeight <= 0)
+                {
+                    continue;
+                }
+                if (!heightKnown)
+                {
+                    height = getEncodingHeight(packetInfo);
+                    heightKnown = true;
+                }
+                if (height > maxHeight)
+                {
+                    continue;
+                }
+            }
+            targets.add(remoteBridge.getValue());
+        }
+
+        if (targets.size() < remoteBridges.size())
+        {
+            stats.relaySkipped(remoteBridges.size() - targets.size());
+        }
+        return targets;
+    }
+
+    /**
+     * Gets the height of the layer of a video packet from a local endpoint,
+     * or 0 if it is in the lowest encoding (or its layer is unknown).
+     */
+    private int getEncodingHeight(PacketInfo packetInfo)
+    {
+        VideoRtpPacket packet = packetInfo.packetAs();
+        int qualityIndex = packet.getQualityIndex();
+        if (qualityIndex < 0 || RtpLayerDesc.getEidFromIndex(qualityIndex) == 0)
+        {
+            return 0;
+        }
+
+        AbstractEndpoint endpoint = conference.getEndpoint(packetInfo.getEndpointId());
+        MediaSourceDesc[] sources = endpoint == null ? null : endpoint.getMediaSources();
+        if (sources == null)
+        {
+            return 0;
+        }
+
+        long ssrc = packet.getSsrc();
+        for (MediaSourceDesc source : sources)
+        {
+            for (RtpEncodingDesc encoding : source.getRtpEncodings())
+            {
+                if (encoding.getPrimarySSRC() == ssrc)
+                {
+                    for (RtpLayerDesc layer : source.getRtpLayers())
+                    {
+                        if (layer.getIndex() == qualityIndex)
+                        {
+                            return layer.getHeight();
+                        }
+                    }
+                    return 0;
+                }
+            }
+        }
+        return 0;
     }
 
     /**
@@ -255,9 +410,21 @@ public boolean wants(PacketInfo packetInfo)
             !remoteBridges.isEmpty();
     }
 
+    @Override
+    public void send(SharedPacketInfo packet)
+    {
+        if (!running.get())
+        {
+            packet.release();
+            return;
+        }
+        send(packet.acquire());
+    }
+
     @Override
     public void send(PacketInfo packet)
     {
+        ByteBufferPool.touch(packet.getPacket().getBuffer(), "ConfOctoTransport.send");
         if (!running.get())
         {
             ByteBufferPool.returnBuffer(packet.getPacket().getBuffer());
@@ -287,17 +454,23 @@ public void send(PacketInfo packet)
 
     private boolean doSend(PacketInfo packetInfo)
     {
+        Collection<SocketAddress> targets = getTargets(packetInfo);
+        if (targets.isEmpty())
+        {
+            ByteBufferPool.returnBuffer(packetInfo.getPacket().getBuffer());
+            return true;
+        }
+
         stats.packetSent(packetInfo.getPacket().getLength(), clock.instant());
         packetInfo.sent();
         bridgeOctoTransport.sendMediaData(
             packetInfo.getPacket().getBuffer(),
             packetInfo.getPacket().getOffset(),
             packetInfo.getPacket().getLength(),
-            remoteBridges.values(),
+            targets,
             conferenceId,
             packetInfo.getEndpointId()
         );
-        ByteBufferPool.returnBuffer(packetInfo.getPacket().getBuffer());
 
         return true;
     }
@@ -311,10 +484,12 @@ public void handleMediaPacket(@NotNull OctoPacketInfo packetInfo)
             return;
         }
         stats.packetReceived(packetInfo.getPacket().length, clock.instant());
-        IncomingOctoEpPacketHandler handler = incomingPacketHandlers.get(packetInfo.getEndpointId());
-        if (handler != null)
+        ByteBufferPool.touch(packetInfo.getPacket().getBuffer(), "ConfOctoTransport.handleMediaPacket");
+        RegisteredHandler registeredHandler = incomingPacketHandlers.get(packetInfo.getOctoEndpointId());
+        if (registeredHandler != null)
         {
-            handler.handleIncomingPacket(packetInfo);
+            packetInfo.setEndpointId(registeredHandler.epId);
+            registeredHandler.handler.handleIncomingPacket(packetInfo);
         }
         else
         {
@@ -414,6 +589,7 @@ public void endpointExpired(String endpointId)
         {
             removed.close();
         }
+        remoteDemand.remove(endpointId);
     }
 
     /**
@@ -457,7 +633,7 @@ public void sendMessage(BridgeChannelMessage message)
         }
 
         bridgeOctoTransport.sendString(
-            message.toJson(),
+            message.toJsonForSending(),
             remoteBridges.values(),
             conferenceId
         );
@@ -470,15 +646,48 @@ public void addHandler(String epId, IncomingOctoEpPacketHandler handler)
             return;
         }
 
+        long octoEpId;
+        try
+        {
+            octoEpId = OctoPacket.endpointIdToNumber(epId);
+        }
+        catch (NumberFormatException nfe)
+        {
+            logger.warn("Not adding a handler for ep ID " + epId + ", it is not a valid Octo endpoint ID.");
+            return;
+        }
+
         logger.info("Adding handler for ep ID " + epId);
-        incomingPacketHandlers.put(epId, handler);
+        synchronized (incomingPacketHandlersLock)
+        {
+            LongObjectHashMap<RegisteredHandler> newHandlers = new LongObjectHashMap<>(incomingPacketHandlers);
+            newHandlers.put(octoEpId, new RegisteredHandler(epId, handler));
+            incomingPacketHandlers = newHandlers;
+        }
     }
 
     public void removeHandler(String epId, IncomingOctoEpPacketHandler handler)
     {
-        if (incomingPacketHandlers.remove(epId, handler))
+        long octoEpId;
+        try
+        {
+            octoEpId = OctoPacket.endpointIdToNumber(epId);
+        }
+        catch (NumberFormatException nfe)
         {
-            logger.info("Removing handler for ep ID " + epId);
+            return;
+        }
+
+        synchronized (incomingPacketHandlersLock)
+        {
+            RegisteredHandler registeredHandler = incomingPacketHandlers.get(octoEpId);
+            if (registeredHandler != null && registeredHandler.handler == handler)
+            {
+                logger.info("Removing handler for ep ID " + epId);
+                LongObjectHashMap<RegisteredHandler> newHandlers = new LongObjectHashMap<>(incomingPacketHandlers);
+                newHandlers.remove(octoEpId);
+                incomingPacketHandlers = newHandlers;
+            }
         }
     }
 
@@ -487,9 +696,16 @@ public void removeHandler(String epId, IncomingOctoEpPacketHandler handler)
      */
     private PacketInfoQueue createQueue(String epId)
     {
+        // The handler sends on the Octo socket, which may block, unless the
+        // UDP send queue is enabled (in which case it only enqueues). Only
+        // then can the queue be pinned to a shard, which must not block.
+        ExecutorService executor
+            = TaskPools.CPU_SHARDS != null && OctoConfig.config.getUdpSendQueueSize() > 0
+                ? TaskPools.CPU_SHARDS.getShard(epId)
+                : TaskPools.IO_POOL;
         PacketInfoQueue q = new PacketInfoQueue(
             "octo-tentacle-outgoing-packet-queue",
-            TaskPools.IO_POOL,
+            executor,
             this::doSend,
             OctoConfig.config.getSendQueueSize());
         q.setErrorHandler(queueErrorCounter);
@@ -529,6 +745,7 @@ public OrderedJsonObject getDebugState()
         private final RateTracker sendPacketRate = new RateTracker(Duration.ofSeconds(60), Duration.ofSeconds(1));
         private final LongAdder bytesSent = new LongAdder();
         private final BitrateTracker sendBitRate = new BitrateTracker(Duration.ofSeconds(60), Duration.ofSeconds(1));
+        private final LongAdder relaysSkipped = new LongAdder();
 
         void packetReceived(int size, Instant time)
         {
@@ -553,6 +770,11 @@ void packetSent(int size, Instant time)
             sendBitRate.update(DataSizeKt.getBytes(size), timeMs);
         }
 
+        void relaySkipped(int numBridges)
+        {
+            relaysSkipped.add(numBridges);
+        }
+
         OrderedJsonObject toJson()
         {
             OrderedJsonObject debugState = new OrderedJsonObject();
@@ -566,6 +788,7 @@ OrderedJsonObject toJson()
             debugState.put("send_packet_rate_pps", sendPacketRate.getRate());
             debugState.put("bytes_sent", bytesSent.sum());
             debugState.put("send_bitrate_bps", sendBitRate.getRate().getBps());
+            debugState.put("relays_skipped_no_demand", relaysSkipped.sum());
 
             return debugState;
         }
@@ -575,4 +798,24 @@ OrderedJsonObject toJson()
     {
         void handleIncomingPacket(@NotNull OctoPacketInfo packetInfo);
     }
+
+    /**
+     * An {@link IncomingOctoEpPacketHandler} together with the endpoint ID it
+     * was registered for, which is set on the packets it handles (so that we
+     * don't create a new string for each packet).
+     */
+    private static class RegisteredHandler
+    {
+        @NotNull
+        private final String epId;
+
+        @NotNull
+        private final IncomingOctoEpPacketHandler handler;
+
+        private RegisteredHandler(@NotNull String epId, @NotNull IncomingOctoEpPacketHandler handler)
+        {
+            this.epId = epId;
+            this.handler = handler;
+        }
+    }
 }
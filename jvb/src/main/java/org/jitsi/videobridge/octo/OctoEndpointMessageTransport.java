@@ -78,6 +78,8 @@ public BridgeChannelMessage addReceiver(@NotNull AddReceiverMessage message)
         if (endpoint instanceof Endpoint)
         {
             endpoint.addReceiver(message.getBridgeId(), message.getVideoConstraints());
+            conference.getTentacle().remoteDemandChanged(
+                message.getBridgeId(), message.getEndpointId(), message.getVideoConstraints());
         }
 
         return null;
@@ -94,6 +96,7 @@ public BridgeChannelMessage removeReceiver(@NotNull RemoveReceiverMessage messag
         if (endpoint instanceof Endpoint)
         {
             endpoint.removeReceiver(message.getBridgeId());
+            conference.getTentacle().remoteDemandChanged(message.getBridgeId(), message.getEndpointId(), null);
         }
 
         return null;
@@ -39,7 +39,29 @@
  * Endpoint ID: An identifier of the endpoint that is the original source of
  * the packet.
  * <p/>
- * M: media type (audio, video, or data).
+ * M: media type (audio, video, or data), or 3 for a batch.
+ * <p/>
+ * A batch carries several Octo packets (each with its own Octo header) in a
+ * single datagram, each preceded by its length:
+ * <pre>{@code
+ *  0                   1                   2                   3
+ *  0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                              0                                |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                          0xffffffff                           |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * | 3 |  Reserved     |    Version    |          Reserved         |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |            Length             |    Octo packet ...            |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+                               +
+ * |                              ...                              |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |            Length             |    Octo packet ...            |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * }</pre>
+ * Bridges which do not support batches drop them as invalid packets, so
+ * batches must only be sent when all bridges support them.
  *
  * @author Boris Grozev
  */
@@ -65,6 +87,27 @@
      */
     private static final int OCTO_MEDIA_TYPE_DATA = 2;
 
+    /**
+     * The value of the media type field which identifies a batch of Octo
+     * packets.
+     */
+    private static final int OCTO_MEDIA_TYPE_BATCH = 3;
+
+    /**
+     * The version of the batch format.
+     */
+    private static final int OCTO_BATCH_VERSION = 1;
+
+    /**
+     * The length of the field which precedes each packet in a batch.
+     */
+    public static final int BATCH_ENTRY_HEADER_LENGTH = 2;
+
+    /**
+     * The maximum length of a packet in a batch.
+     */
+    public static final int BATCH_ENTRY_MAX_LENGTH = 0xffff;
+
     /**
      * @return the integer used to identify the particular {@link MediaType}
      * in Octo.
@@ -107,6 +150,64 @@ public static void writeHeaders(
         buf[off+3] = 0;
     }
 
+    /**
+     * Writes the header of a batch of Octo packets to the specified buffer at
+     * the specified offset.
+     * @param buf the buffer to write to.
+     * @param off the offset to write at.
+     */
+    public static void writeBatchHeader(byte[] buf, int off)
+    {
+        assertMinLen(buf, off, buf.length - off);
+        writeInt(buf, off, 0);
+        writeInt(buf, off + 4, 0xffffffff);
+        buf[off + 8] = (byte) (OCTO_MEDIA_TYPE_BATCH << 6);
+        buf[off + 9] = OCTO_BATCH_VERSION;
+        buf[off + 10] = 0;
+        buf[off + 11] = 0;
+    }
+
+    /**
+     * Writes the length of a packet in a batch.
+     * @param buf the buffer to write to.
+     * @param off the offset at which the packet's entry begins.
+     * @param len the length of the packet.
+     */
+    public static void writeBatchEntryLength(byte[] buf, int off, int len)
+    {
+        if (len < 0 || len > BATCH_ENTRY_MAX_LENGTH)
+        {
+            throw new IllegalArgumentException("Invalid length: " + len);
+        }
+        writeShort(buf, off, (short) len);
+    }
+
+    /**
+     * Reads the length of a packet in a batch.
+     * @param buf the buffer which contains the batch.
+     * @param off the offset at which the packet's entry begins.
+     * @return the length of the packet which follows.
+     */
+    public static int readBatchEntryLength(byte[] buf, int off)
+    {
+        return readUint16(buf, off);
+    }
+
+    /**
+     * Checks whether the buffer contains a batch of Octo packets.
+     * @param buf the buffer which contains the Octo header.
+     * @param off the offset in {@code buf} at which the Octo header begins.
+     * @param len the length of the buffer.
+     * @return {@code true} if the buffer contains a batch with a version
+     * that we support.
+     */
+    public static boolean isBatch(byte[] buf, int off, int len)
+    {
+        return verifyMinLength(buf, off, len, OCTO_HEADER_LENGTH)
+            && (buf[off + 8] & 0xc0) >> 6 == OCTO_MEDIA_TYPE_BATCH
+            && buf[off + 9] == OCTO_BATCH_VERSION;
+    }
+
     /**
      * Reads the conference ID from an Octo header.
      * @param buf the buffer which contains the Octo header.
@@ -154,10 +255,51 @@ public static MediaType readMediaType(byte[] buf, int off, int len)
      * @return the endpoint ID from the given Octo header.
      */
     public static String readEndpointId(byte[] buf, int off, int len)
+    {
+        return endpointIdToString(readEndpointIdNumber(buf, off, len));
+    }
+
+    /**
+     * Reads the endpoint ID from an Octo header in numeric form, without
+     * converting it to a string.
+     * @param buf the buffer which contains the Octo header.
+     * @param off the offset in {@code buf} at which the Octo header begins.
+     * @param len the length of the buffer.
+     * @return the endpoint ID from the given Octo header, as an unsigned
+     * 32-bit number.
+     */
+    public static long readEndpointIdNumber(byte[] buf, int off, int len)
     {
         assertMinLen(buf, off, len);
 
-        long eid = readUint32(buf, off + 4);
+        return readUint32(buf, off + 4);
+    }
+
+    /**
+     * Converts an endpoint ID to the numeric form used in the Octo header.
+     * @param endpointId the Octo endpoint ID represented as a hex string.
+     * @return the endpoint ID as an unsigned 32-bit number.
+     * @throws NumberFormatException if {@code endpointId} is not a valid
+     * Octo endpoint ID.
+     */
+    public static long endpointIdToNumber(String endpointId)
+    {
+        long eid = Long.parseLong(endpointId, 16);
+        if (eid < 0 || eid > 0xffff_ffffL)
+        {
+            throw new NumberFormatException("Invalid Octo endpoint ID: " + endpointId);
+        }
+        return eid;
+    }
+
+    /**
+     * Converts an endpoint ID from the numeric form used in the Octo header
+     * to a string.
+     * @param eid the endpoint ID as an unsigned 32-bit number.
+     * @return the endpoint ID represented as a hex string.
+     */
+    public static String endpointIdToString(long eid)
+    {
         return String.format("%08x", eid);
     }
 
@@ -183,7 +325,7 @@ private static int writeConferenceId(
      */
     private static int writeEndpointId(String endpointId, byte[] buf, int off)
     {
-        long eid = Long.parseLong(endpointId, 16);
+        long eid = endpointIdToNumber(endpointId);
         writeInt(buf, off, (int) eid);
 
         return 4;
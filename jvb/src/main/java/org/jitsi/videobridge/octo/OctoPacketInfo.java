@@ -20,12 +20,28 @@
 import org.jitsi.rtp.*;
 
 /**
- * Currently we only use this to recognize packets coming from Octo.
+ * A packet which was received over Octo.
  */
 public class OctoPacketInfo extends PacketInfo
 {
+    /**
+     * The ID of the source endpoint in the numeric form in which it appears
+     * in the Octo header.
+     */
+    private long octoEndpointId = -1;
+
     public OctoPacketInfo(@NotNull Packet packet)
     {
         super(packet);
     }
+
+    public long getOctoEndpointId()
+    {
+        return octoEndpointId;
+    }
+
+    public void setOctoEndpointId(long octoEndpointId)
+    {
+        this.octoEndpointId = octoEndpointId;
+    }
 }
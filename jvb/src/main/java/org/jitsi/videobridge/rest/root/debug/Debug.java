@@ -24,6 +24,7 @@
 import org.jitsi.utils.logging2.Logger;
 import org.jitsi.utils.queue.*;
 import org.jitsi.videobridge.*;
+import org.jitsi.videobridge.cc.allocation.*;
 import org.jitsi.videobridge.rest.*;
 import org.jitsi.videobridge.rest.annotations.*;
 import org.jitsi.videobridge.stats.*;
@@ -295,6 +296,9 @@ public String getJvbFeatureStats(@PathParam("feature") DebugFeatures feature)
             case PAYLOAD_VERIFICATION: {
                 return PayloadVerificationPlugin.getStatsJson().toJSONString();
             }
+            case ALLOCATION_STATS: {
+                return BandwidthAllocator.getStatsJson().toJSONString();
+            }
             default: {
                 throw new NotFoundException();
             }
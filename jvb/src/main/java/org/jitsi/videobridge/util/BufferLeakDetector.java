@@ -0,0 +1,296 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.util;
+
+import org.jetbrains.annotations.*;
+import org.jitsi.nlj.util.*;
+import org.jitsi.utils.logging2.*;
+
+import java.lang.ref.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Detects buffers from {@link ByteBufferPool} which are never returned, in
+ * the spirit of Netty's {@code ResourceLeakDetector}. Only a fraction of the
+ * buffers (given by the sample rate) is tracked, so that it is cheap enough
+ * to keep on in production. A tracked buffer is referenced weakly, and if it
+ * is garbage collected before it is returned it is reported as a leak, with
+ * the site which allocated it and the last place which touched it (see
+ * {@link #touch(byte[], String)}).
+ *
+ * As opposed to {@link ByteBufferPool#ENABLE_BOOKKEEPING} this does not log
+ * every request and return, and only captures a stack trace for the sampled
+ * buffers.
+ */
+class BufferLeakDetector
+{
+    /**
+     * The {@link Logger}
+     */
+    private static final Logger logger = new LoggerImpl(BufferLeakDetector.class.getName());
+
+    /**
+     * The maximum number of distinct allocation sites and touch points for
+     * which we keep counts, so that a bug can't make the counts grow
+     * unbounded.
+     */
+    private static final int MAX_SITES = 100;
+
+    /**
+     * The fraction of buffers to track, between 0 and 1.
+     */
+    private final double sampleRate;
+
+    /**
+     * The tracked buffers which are currently outstanding, by their identity
+     * hash code. When two tracked buffers have the same identity hash code
+     * only the first one is tracked.
+     */
+    private final Map<Integer, Record> tracked = new ConcurrentHashMap<>();
+
+    /**
+     * The queue to which the records of tracked buffers are added when the
+     * buffer is garbage collected.
+     */
+    private final ReferenceQueue<byte[]> referenceQueue = new ReferenceQueue<>();
+
+    /**
+     * The number of buffers which were tracked.
+     */
+    private final LongAdder numTracked = new LongAdder();
+
+    /**
+     * The number of tracked buffers which leaked.
+     */
+    private final LongAdder numLeaks = new LongAdder();
+
+    /**
+     * The number of leaks by allocation site.
+     */
+    private final Map<String, AtomicLong> leaksByAllocationSite = new ConcurrentHashMap<>();
+
+    /**
+     * The number of leaks by the last point (e.g. the node of the pipeline)
+     * which touched the leaked buffer.
+     */
+    private final Map<String, AtomicLong> leaksByLastTouch = new ConcurrentHashMap<>();
+
+    BufferLeakDetector(double sampleRate)
+    {
+        if (sampleRate < 0 || sampleRate > 1)
+        {
+            throw new IllegalArgumentException("Invalid sample rate: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        logger.info("Initialized with sample rate " + sampleRate);
+    }
+
+    /**
+     * Notifies this detector that {@code buf} was handed out by the pool. It
+     * will be tracked with probability {@link #sampleRate}.
+     */
+    void bufferRequested(@NotNull byte[] buf)
+    {
+        reportLeaks();
+
+        if (ThreadLocalRandom.current().nextDouble() >= sampleRate)
+        {
+            return;
+        }
+
+        Record record = new Record(buf, referenceQueue, new Throwable().getStackTrace());
+        if (tracked.putIfAbsent(record.id, record) == null)
+        {
+            numTracked.increment();
+        }
+    }
+
+    /**
+     * Notifies this detector that {@code buf} was returned to the pool.
+     */
+    void bufferReturned(@NotNull byte[] buf)
+    {
+        if (tracked.isEmpty())
+        {
+            return;
+        }
+        int id = System.identityHashCode(buf);
+        Record record = tracked.get(id);
+        if (record != null && record.get() == buf)
+        {
+            tracked.remove(id, record);
+            record.clear();
+        }
+    }
+
+    /**
+     * Records that {@code buf} was last seen at {@code location}, if it is
+     * being tracked.
+     */
+    void touch(@NotNull byte[] buf, @NotNull String location)
+    {
+        if (tracked.isEmpty())
+        {
+            return;
+        }
+        Record record = tracked.get(System.identityHashCode(buf));
+        if (record != null && record.get() == buf)
+        {
+            record.lastTouch = location;
+        }
+    }
+
+    /**
+     * Gets the record of {@code buf}, or {@code null} if it is not being
+     * tracked. Tests use it to enqueue the record, as the garbage collector
+     * would.
+     */
+    Record getRecord(@NotNull byte[] buf)
+    {
+        Record record = tracked.get(System.identityHashCode(buf));
+        return record != null && record.get() == buf ? record : null;
+    }
+
+    /**
+     * Reports the tracked buffers which were garbage collected without being
+     * returned.
+     */
+    private void reportLeaks()
+    {
+        Reference<? extends byte[]> ref;
+        while ((ref = referenceQueue.poll()) != null)
+        {
+            Record record = (Record) ref;
+            if (!tracked.remove(record.id, record))
+            {
+                // It was returned.
+                continue;
+            }
+
+            numLeaks.increment();
+            String allocationSite = record.getAllocationSite();
+            long count = increment(leaksByAllocationSite, allocationSite);
+            increment(leaksByLastTouch, record.lastTouch);
+
+            // Only log the full trace the first time, and then on powers of 10,
+            // to avoid spamming the logs.
+            if (count == 1 || Math.log10(count) % 1 == 0)
+            {
+                logger.warn("Buffer leak #" + count + " from " + allocationSite
+                    + ", last touched at " + record.lastTouch + ". Allocated at:\n"
+                    + record.getAllocationTrace());
+            }
+        }
+    }
+
+    private static long increment(Map<String, AtomicLong> counts, String key)
+    {
+        AtomicLong count = counts.get(key);
+        if (count == null)
+        {
+            if (counts.size() >= MAX_SITES)
+            {
+                key = "other";
+            }
+            count = counts.computeIfAbsent(key, k -> new AtomicLong());
+        }
+        return count.incrementAndGet();
+    }
+
+    /**
+     * Gets a snapshot of the statistics of this detector in JSON format.
+     */
+    OrderedJsonObject getStats()
+    {
+        reportLeaks();
+
+        OrderedJsonObject stats = new OrderedJsonObject();
+        stats.put("sample_rate", sampleRate);
+        stats.put("num_tracked", numTracked.sum());
+        stats.put("num_outstanding_tracked", tracked.size());
+        stats.put("num_leaks", numLeaks.sum());
+        stats.put("leaks_by_allocation_site", toJson(leaksByAllocationSite));
+        stats.put("leaks_by_last_touch", toJson(leaksByLastTouch));
+        return stats;
+    }
+
+    private static OrderedJsonObject toJson(Map<String, AtomicLong> counts)
+    {
+        OrderedJsonObject json = new OrderedJsonObject();
+        counts.entrySet().stream()
+            .sorted((a, b) -> Long.compare(b.getValue().get(), a.getValue().get()))
+            .forEach(e -> json.put(e.getKey(), e.getValue().get()));
+        return json;
+    }
+
+    /**
+     * The information kept about a tracked buffer.
+     */
+    static class Record extends WeakReference<byte[]>
+    {
+        private final int id;
+
+        private final StackTraceElement[] allocationTrace;
+
+        private volatile String lastTouch = "none";
+
+        Record(byte[] buf, ReferenceQueue<byte[]> queue, StackTraceElement[] allocationTrace)
+        {
+            super(buf, queue);
+            this.id = System.identityHashCode(buf);
+            this.allocationTrace = allocationTrace;
+        }
+
+        /**
+         * Gets the first frame of the allocation trace which is outside of the
+         * pool itself.
+         */
+        String getAllocationSite()
+        {
+            for (StackTraceElement element : allocationTrace)
+            {
+                if (!isPoolFrame(element))
+                {
+                    return element.toString();
+                }
+            }
+            return "unknown";
+        }
+
+        String getAllocationTrace()
+        {
+            StringBuilder sb = new StringBuilder();
+            for (StackTraceElement element : allocationTrace)
+            {
+                if (!isPoolFrame(element))
+                {
+                    sb.append("    ").append(element).append('\n');
+                }
+            }
+            return sb.toString();
+        }
+
+        private static boolean isPoolFrame(StackTraceElement element)
+        {
+            String className = element.getClassName();
+            return className.equals(BufferLeakDetector.class.getName())
+                || className.equals(ByteBufferPool.class.getName());
+        }
+    }
+}
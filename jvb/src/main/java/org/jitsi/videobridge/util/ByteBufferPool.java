@@ -19,8 +19,10 @@
 import org.jetbrains.annotations.*;
 import org.jitsi.nlj.util.*;
 import org.jitsi.utils.logging2.*;
+import org.jitsi.videobridge.util.config.*;
 import org.json.simple.*;
 
+import java.nio.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
@@ -42,7 +44,12 @@
      */
     private static int T1 = 220;
     private static int T2 = 775;
-    private static int T3 = 1500;
+    /**
+     * Large enough for a full 1500-byte datagram together with the room the
+     * RTP stack leaves before and after a packet, so that the transports can
+     * read into pooled buffers.
+     */
+    private static int T3 = 1500 + 64;
 
     /**
      * The pool of buffers with size <= T1
@@ -60,11 +67,66 @@
     private static final PartitionedByteBufferPool pool3
             = new PartitionedByteBufferPool(T3);
 
+    /**
+     * Whether to keep a per-thread cache of buffers in front of each of the
+     * partitioned pools, so that most requests and returns don't touch the
+     * shared partitions.
+     */
+    private static final boolean ENABLE_THREAD_LOCAL_CACHE = true;
+
+    /**
+     * The maximum number of buffers of each size class kept in the cache of
+     * a single thread.
+     */
+    private static final int THREAD_LOCAL_CACHE_CAPACITY = 32;
+
+    /**
+     * The per-thread cache in front of {@link #pool1}.
+     */
+    private static final ThreadLocalByteBufferCache cache1
+            = new ThreadLocalByteBufferCache(pool1, T1, THREAD_LOCAL_CACHE_CAPACITY);
+
+    /**
+     * The per-thread cache in front of {@link #pool2}.
+     */
+    private static final ThreadLocalByteBufferCache cache2
+            = new ThreadLocalByteBufferCache(pool2, T2, THREAD_LOCAL_CACHE_CAPACITY);
+
+    /**
+     * The per-thread cache in front of {@link #pool3}.
+     */
+    private static final ThreadLocalByteBufferCache cache3
+            = new ThreadLocalByteBufferCache(pool3, T3, THREAD_LOCAL_CACHE_CAPACITY);
+
     /**
      * The {@link Logger}
      */
     private static final Logger logger = new LoggerImpl(ByteBufferPool.class.getName());
 
+    /**
+     * The detector of buffers which are never returned, or null if leak
+     * detection is disabled.
+     */
+    private static final BufferLeakDetector leakDetector
+        = BufferPoolConfig.config.getLeakDetectionSampleRate() > 0
+            ? new BufferLeakDetector(BufferPoolConfig.config.getLeakDetectionSampleRate())
+            : null;
+
+    /**
+     * Holds the pool of direct buffers, so that it (and its configuration)
+     * is only initialized when it is first needed.
+     */
+    private static class DirectPoolHolder
+    {
+        private static final DirectByteBufferPool directPool
+            = BufferPoolConfig.config.getDirectEnabled()
+                ? new DirectByteBufferPool(
+                    T3,
+                    BufferPoolConfig.config.getDirectBuffersPerSlab(),
+                    BufferPoolConfig.config.getDirectMaxSlabs())
+                : null;
+    }
+
     /**
      * A debug data structure which tracks outstanding buffers and tracks from where (via
      * a stack trace) they were requested and returned.
@@ -148,15 +210,15 @@ public static byte[] getBuffer(int size)
         byte[] buf;
         if (size <= T1)
         {
-            buf = pool1.getBuffer(size);
+            buf = ENABLE_THREAD_LOCAL_CACHE ? cache1.getBuffer(size) : pool1.getBuffer(size);
         }
         else if (size <= T2)
         {
-            buf = pool2.getBuffer(size);
+            buf = ENABLE_THREAD_LOCAL_CACHE ? cache2.getBuffer(size) : pool2.getBuffer(size);
         }
         else if (size <= T3)
         {
-            buf = pool3.getBuffer(size);
+            buf = ENABLE_THREAD_LOCAL_CACHE ? cache3.getBuffer(size) : pool3.getBuffer(size);
         }
         else
         {
@@ -164,6 +226,11 @@ else if (size <= T3)
             numLargeRequests.increment();
         }
 
+        if (leakDetector != null)
+        {
+            leakDetector.bufferRequested(buf);
+        }
+
         if (ENABLE_BOOKKEEPING)
         {
             int arrayId = System.identityHashCode(buf);
@@ -189,6 +256,11 @@ public static void returnBuffer(@NotNull byte[] buf)
 
         int len = buf.length;
 
+        if (leakDetector != null)
+        {
+            leakDetector.bufferReturned(buf);
+        }
+
         if (ENABLE_BOOKKEEPING)
         {
             int arrayId = System.identityHashCode(buf);
@@ -218,15 +290,36 @@ else if ((b = returnedBookkeeping.get(arrayId)) != null)
 
         if (len <= T1)
         {
-            pool1.returnBuffer(buf);
+            if (ENABLE_THREAD_LOCAL_CACHE)
+            {
+                cache1.returnBuffer(buf);
+            }
+            else
+            {
+                pool1.returnBuffer(buf);
+            }
         }
         else if (len <= T2)
         {
-            pool2.returnBuffer(buf);
+            if (ENABLE_THREAD_LOCAL_CACHE)
+            {
+                cache2.returnBuffer(buf);
+            }
+            else
+            {
+                pool2.returnBuffer(buf);
+            }
         }
         else if (len <= T3)
         {
-            pool3.returnBuffer(buf);
+            if (ENABLE_THREAD_LOCAL_CACHE)
+            {
+                cache3.returnBuffer(buf);
+            }
+            else
+            {
+                pool3.returnBuffer(buf);
+            }
         }
         else
         {
@@ -236,6 +329,64 @@ else if (len <= T3)
         }
     }
 
+    /**
+     * Records that a buffer obtained from this pool has reached
+     * {@code location} (e.g. a stage of the packet pipeline), so that if it
+     * leaks the leak detector can tell where it was last seen. Does nothing
+     * unless leak detection is enabled.
+     */
+    public static void touch(@NotNull byte[] buf, @NotNull String location)
+    {
+        if (leakDetector != null)
+        {
+            leakDetector.touch(buf, location);
+        }
+    }
+
+    /**
+     * Whether socket I/O should use buffers from {@link #getDirectBuffer()}.
+     */
+    public static boolean directBuffersEnabled()
+    {
+        return DirectPoolHolder.directPool != null;
+    }
+
+    /**
+     * Returns a cleared {@link ByteBuffer} with a capacity of at least
+     * {@link #getDirectBufferSize()} bytes, to be used for socket I/O. It is
+     * carved out of direct memory if that is enabled and available, and is a
+     * heap buffer otherwise.
+     */
+    public static ByteBuffer getDirectBuffer()
+    {
+        DirectByteBufferPool directPool = DirectPoolHolder.directPool;
+        if (directPool == null)
+        {
+            return ByteBuffer.allocate(T3);
+        }
+        return directPool.getBuffer();
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #getDirectBuffer()}.
+     */
+    public static void returnDirectBuffer(@NotNull ByteBuffer buf)
+    {
+        DirectByteBufferPool directPool = DirectPoolHolder.directPool;
+        if (directPool != null)
+        {
+            directPool.returnBuffer(buf);
+        }
+    }
+
+    /**
+     * The capacity of the buffers returned by {@link #getDirectBuffer()}.
+     */
+    public static int getDirectBufferSize()
+    {
+        return T3;
+    }
+
     /**
      * Gets a JSON representation of the statistics about the pool.
      */
@@ -254,6 +405,23 @@ public static OrderedJsonObject getStatsJson()
             stats.put("pool2", pool2.getStats());
             stats.put("pool3", pool3.getStats());
         }
+        if (ENABLE_THREAD_LOCAL_CACHE)
+        {
+            OrderedJsonObject cacheStats = new OrderedJsonObject();
+            cacheStats.put("cache1", cache1.getStats());
+            cacheStats.put("cache2", cache2.getStats());
+            cacheStats.put("cache3", cache3.getStats());
+            stats.put("thread_local_cache", cacheStats);
+        }
+        DirectByteBufferPool directPool = DirectPoolHolder.directPool;
+        if (directPool != null)
+        {
+            stats.put("direct", directPool.getStats());
+        }
+        if (leakDetector != null)
+        {
+            stats.put("leak_detection", leakDetector.getStats());
+        }
 
         long allAllocations = numLargeRequestsSum + pool1.getNumAllocations()
                 + pool2.getNumAllocations() + pool3.getNumAllocations();
@@ -0,0 +1,179 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.util;
+
+import org.jetbrains.annotations.*;
+import org.jitsi.utils.logging2.*;
+import org.json.simple.*;
+
+import java.nio.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A pool of fixed-size direct {@link ByteBuffer}s, carved out of large
+ * slabs of direct memory which are allocated on demand (up to a maximum
+ * number of slabs) and never freed. When the pool is exhausted, requests are
+ * satisfied with heap buffers instead, which are not taken back.
+ */
+class DirectByteBufferPool
+{
+    /**
+     * The {@link Logger}
+     */
+    private static final Logger logger = new LoggerImpl(DirectByteBufferPool.class.getName());
+
+    /**
+     * The size of each buffer.
+     */
+    private final int bufferSize;
+
+    /**
+     * The number of buffers carved out of each slab.
+     */
+    private final int buffersPerSlab;
+
+    /**
+     * The maximum number of slabs to allocate.
+     */
+    private final int maxSlabs;
+
+    /**
+     * The buffers which are available.
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of slabs allocated so far.
+     */
+    private final AtomicInteger numSlabs = new AtomicInteger();
+
+    /**
+     * Total number of buffers requested.
+     */
+    private final LongAdder numRequests = new LongAdder();
+
+    /**
+     * The number of requests which were satisfied with a heap buffer because
+     * the pool was exhausted.
+     */
+    private final LongAdder numHeapFallbacks = new LongAdder();
+
+    DirectByteBufferPool(int bufferSize, int buffersPerSlab, int maxSlabs)
+    {
+        if (bufferSize <= 0 || buffersPerSlab <= 0 || maxSlabs <= 0)
+        {
+            throw new IllegalArgumentException(
+                "Invalid direct pool parameters: bufferSize=" + bufferSize
+                    + " buffersPerSlab=" + buffersPerSlab + " maxSlabs=" + maxSlabs);
+        }
+        this.bufferSize = bufferSize;
+        this.buffersPerSlab = buffersPerSlab;
+        this.maxSlabs = maxSlabs;
+        logger.info("Initialized a new " + getClass().getSimpleName() + " with buffer size "
+            + bufferSize + ", " + buffersPerSlab + " buffers per slab and at most " + maxSlabs + " slabs.");
+    }
+
+    /**
+     * Returns a cleared buffer of {@link #bufferSize} bytes. It is a direct
+     * buffer unless the pool is exhausted.
+     */
+    ByteBuffer getBuffer()
+    {
+        numRequests.increment();
+
+        ByteBuffer buf = pool.poll();
+        if (buf == null && allocateSlab())
+        {
+            buf = pool.poll();
+        }
+        if (buf == null)
+        {
+            numHeapFallbacks.increment();
+            return ByteBuffer.allocate(bufferSize);
+        }
+
+        buf.clear();
+        return buf;
+    }
+
+    /**
+     * Returns a buffer to the pool. Heap buffers handed out as a fallback are
+     * dropped.
+     */
+    void returnBuffer(@NotNull ByteBuffer buf)
+    {
+        if (buf.isDirect() && buf.capacity() == bufferSize)
+        {
+            pool.offer(buf);
+        }
+    }
+
+    int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    /**
+     * Allocates a new slab and adds its buffers to the pool, unless we have
+     * already allocated {@link #maxSlabs} slabs.
+     *
+     * @return whether a slab was allocated.
+     */
+    private boolean allocateSlab()
+    {
+        int slabs;
+        do
+        {
+            slabs = numSlabs.get();
+            if (slabs >= maxSlabs)
+            {
+                return false;
+            }
+        } while (!numSlabs.compareAndSet(slabs, slabs + 1));
+
+        ByteBuffer slab = ByteBuffer.allocateDirect(bufferSize * buffersPerSlab);
+        for (int i = 0; i < buffersPerSlab; i++)
+        {
+            slab.limit((i + 1) * bufferSize);
+            slab.position(i * bufferSize);
+            pool.offer(slab.slice());
+        }
+        logger.info("Allocated direct slab " + (slabs + 1) + "/" + maxSlabs);
+        return true;
+    }
+
+    /**
+     * Gets a snapshot of the statistics of this pool in JSON format.
+     */
+    @SuppressWarnings("unchecked")
+    JSONObject getStats()
+    {
+        JSONObject stats = new JSONObject();
+        int slabs = numSlabs.get();
+        int available = pool.size();
+        stats.put("buffer_size", bufferSize);
+        stats.put("num_slabs", slabs);
+        stats.put("max_slabs", maxSlabs);
+        stats.put("direct_bytes_allocated", (long) slabs * buffersPerSlab * bufferSize);
+        stats.put("num_available", available);
+        stats.put("num_outstanding", slabs * buffersPerSlab - available);
+        stats.put("num_requests", numRequests.sum());
+        stats.put("num_heap_fallbacks", numHeapFallbacks.sum());
+        return stats;
+    }
+}
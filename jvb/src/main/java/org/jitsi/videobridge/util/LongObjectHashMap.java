@@ -0,0 +1,241 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.util;
+
+import org.jetbrains.annotations.*;
+
+import java.util.*;
+
+/**
+ * A hash map with primitive {@code long} keys (e.g. SSRCs), which does not
+ * box the keys on lookup. It uses open addressing with linear probing, and
+ * does not allow {@code null} values.
+ *
+ * This class is not thread safe. Maps which are read on the packet path and
+ * written rarely can be used in a copy-on-write fashion (see
+ * {@link #LongObjectHashMap(LongObjectHashMap)}), publishing a modified
+ * copy through a volatile field.
+ */
+public class LongObjectHashMap<V>
+{
+    /**
+     * The maximum ratio of entries to slots.
+     */
+    private static final double LOAD_FACTOR = 0.5;
+
+    private long[] keys;
+
+    /**
+     * The values, with {@code null} marking an empty slot.
+     */
+    private Object[] values;
+
+    private int size = 0;
+
+    public LongObjectHashMap()
+    {
+        this(8);
+    }
+
+    /**
+     * @param expectedSize the number of entries the map should be able to
+     * hold without resizing.
+     */
+    public LongObjectHashMap(int expectedSize)
+    {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Initializes a new map with the same entries as {@code other}.
+     */
+    public LongObjectHashMap(@NotNull LongObjectHashMap<V> other)
+    {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        size = other.size;
+    }
+
+    /**
+     * Gets the value for {@code key}, or {@code null} if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask)
+        {
+            if (keys[i] == key)
+            {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key)
+    {
+        return get(key) != null;
+    }
+
+    /**
+     * Sets the value for {@code key}.
+     *
+     * @return the previous value, or {@code null} if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, @NotNull V value)
+    {
+        Objects.requireNonNull(value, "value");
+
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; values[i] != null; i = (i + 1) & mask)
+        {
+            if (keys[i] == key)
+            {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++size > keys.length * LOAD_FACTOR)
+        {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the entry for {@code key}.
+     *
+     * @return the removed value, or {@code null} if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key)
+    {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask)
+        {
+            if (keys[i] == key)
+            {
+                V previous = (V) values[i];
+                values[i] = null;
+                size--;
+                shiftBack(i, mask);
+                return previous;
+            }
+        }
+        return null;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Calls {@code action} for each entry in the map, in no particular order.
+     * The map must not be modified from {@code action}.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(@NotNull EntryConsumer<V> action)
+    {
+        for (int i = 0; i < values.length; i++)
+        {
+            if (values[i] != null)
+            {
+                action.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * After the slot at {@code hole} has been emptied, moves back the entries
+     * which follow it in the same run, so that they can still be found.
+     */
+    private void shiftBack(int hole, int mask)
+    {
+        for (int i = (hole + 1) & mask; values[i] != null; i = (i + 1) & mask)
+        {
+            int home = slot(keys[i], mask);
+            // Move the entry if its home slot is not in (hole, i], taking
+            // wrap-around into account.
+            if (((i - home) & mask) >= ((i - hole) & mask))
+            {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                values[i] = null;
+                hole = i;
+            }
+        }
+    }
+
+    private void resize(int capacity)
+    {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldValues.length; j++)
+        {
+            if (oldValues[j] != null)
+            {
+                int i = slot(oldKeys[j], mask);
+                while (values[i] != null)
+                {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int slot(long key, int mask)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * An action to perform on an entry of a {@link LongObjectHashMap}.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V>
+    {
+        void accept(long key, V value);
+    }
+}
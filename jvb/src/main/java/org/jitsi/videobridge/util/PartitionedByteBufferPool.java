@@ -56,11 +56,6 @@
      */
     private static final Logger logger = new LoggerImpl(PartitionedByteBufferPool.class.getName());
 
-    /**
-     * Used to select a partition at random.
-     */
-    private static final Random random = new Random();
-
     /**
      * The partitions.
      */
@@ -100,11 +95,12 @@ void enableStatistics(boolean enable)
     }
 
     /**
-     * Returns a random partition.
+     * Returns a random partition. Uses {@link ThreadLocalRandom} so that
+     * threads don't contend on a shared seed.
      */
     private Partition getPartition()
     {
-        return partitions[random.nextInt(NUM_PARTITIONS)];
+        return partitions[ThreadLocalRandom.current().nextInt(NUM_PARTITIONS)];
     }
 
     /**
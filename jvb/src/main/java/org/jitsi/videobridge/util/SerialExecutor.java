@@ -0,0 +1,164 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.videobridge.util;
+
+import org.jetbrains.annotations.*;
+import org.jitsi.nlj.stats.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs tasks one at a time, in the order in which they were submitted, on a (shared) executor. At most one task of
+ * this instance is queued in, or running on, the underlying executor at any time, so many instances can share a small
+ * pool without one of them taking it over.
+ *
+ * The number of tasks waiting in the queue of an instance is bounded. Tasks submitted while it is full are rejected
+ * with a {@link RejectedExecutionException}.
+ */
+public class SerialExecutor
+    implements Executor
+{
+    @NotNull
+    private final Executor executor;
+
+    private final int maxQueueSize;
+
+    /**
+     * The time tasks spend waiting (in milliseconds), which may be shared by several instances.
+     */
+    @NotNull
+    private final DelayStats queueDelayStats;
+
+    /**
+     * The tasks waiting to run. Synchronized on this.
+     */
+    private final Deque<TimedTask> queue = new ArrayDeque<>();
+
+    /**
+     * Whether a task of this instance has been handed to {@link #executor}. Synchronized on this.
+     */
+    private boolean running = false;
+
+    public SerialExecutor(@NotNull Executor executor, int maxQueueSize, @NotNull DelayStats queueDelayStats)
+    {
+        if (maxQueueSize <= 0)
+        {
+            throw new IllegalArgumentException("Invalid max queue size: " + maxQueueSize);
+        }
+        this.executor = executor;
+        this.maxQueueSize = maxQueueSize;
+        this.queueDelayStats = queueDelayStats;
+    }
+
+    @Override
+    public void execute(@NotNull Runnable command)
+    {
+        synchronized (this)
+        {
+            if (queue.size() >= maxQueueSize)
+            {
+                throw new RejectedExecutionException("Queue is full");
+            }
+            queue.addLast(new TimedTask(command));
+            if (running)
+            {
+                return;
+            }
+            running = true;
+        }
+
+        try
+        {
+            executor.execute(this::runNext);
+        }
+        catch (RejectedExecutionException e)
+        {
+            synchronized (this)
+            {
+                queue.clear();
+                running = false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the next queued task, and hands the one after it (if any) back to {@link #executor}, so that other
+     * instances get their turn.
+     */
+    private void runNext()
+    {
+        TimedTask task;
+        synchronized (this)
+        {
+            task = queue.pollFirst();
+            if (task == null)
+            {
+                running = false;
+                return;
+            }
+        }
+
+        try
+        {
+            task.run();
+        }
+        finally
+        {
+            boolean more;
+            synchronized (this)
+            {
+                more = !queue.isEmpty();
+                if (!more)
+                {
+                    running = false;
+                }
+            }
+            if (more)
+            {
+                executor.execute(this::runNext);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of tasks waiting to run.
+     */
+    public synchronized int getQueueSize()
+    {
+        return queue.size();
+    }
+
+    private class TimedTask implements Runnable
+    {
+        private final Runnable task;
+
+        private final long enqueuedNanos = System.nanoTime();
+
+        TimedTask(Runnable task)
+        {
+            this.task = task;
+        }
+
+        @Override
+        public void run()
+        {
+            queueDelayStats.addDelay(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enqueuedNanos));
+            task.run();
+        }
+    }
+}
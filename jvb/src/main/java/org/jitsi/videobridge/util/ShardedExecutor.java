@@ -0,0 +1,189 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.util;
+
+import org.jetbrains.annotations.*;
+import org.jitsi.nlj.stats.*;
+import org.jitsi.nlj.util.*;
+import org.json.simple.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A set of single-threaded executors ("shards"), each with its own queue.
+ * Work which is submitted to the same shard runs on the same thread, in
+ * order, so giving all queues of an endpoint the same shard keeps the
+ * endpoint's state in one CPU's cache and avoids contention on a single
+ * shared queue.
+ *
+ * The tasks of a shard must not block, since they would block all other
+ * work assigned to the shard.
+ */
+public class ShardedExecutor
+{
+    /**
+     * The thresholds (in milliseconds) of the buckets for the time tasks
+     * spend in a shard's queue.
+     */
+    private static final long[] QUEUE_DELAY_THRESHOLDS = new long[] { 0, 1, 5, 20, 100, 1000 };
+
+    private final Shard[] shards;
+
+    /**
+     * Used to assign shards in round-robin order.
+     */
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    public ShardedExecutor(@NotNull String name, int numShards)
+    {
+        this(name, numShards, 0);
+    }
+
+    /**
+     * @param maxQueueSize the maximum number of tasks waiting in the queue of
+     * each shard, or 0 for no limit. Tasks submitted to a shard whose queue
+     * is full are rejected with a {@link RejectedExecutionException}.
+     */
+    public ShardedExecutor(@NotNull String name, int numShards, int maxQueueSize)
+    {
+        if (numShards <= 0)
+        {
+            throw new IllegalArgumentException("Invalid number of shards: " + numShards);
+        }
+        if (maxQueueSize < 0)
+        {
+            throw new IllegalArgumentException("Invalid max queue size: " + maxQueueSize);
+        }
+        shards = new Shard[numShards];
+        for (int i = 0; i < numShards; i++)
+        {
+            shards[i] = new Shard(name + " " + i, maxQueueSize);
+        }
+    }
+
+    /**
+     * Gets a shard for a new user (e.g. an endpoint), assigning shards in
+     * round-robin order.
+     */
+    public ExecutorService nextShard()
+    {
+        return shards[Math.floorMod(nextShard.getAndIncrement(), shards.length)];
+    }
+
+    /**
+     * Gets the shard for a specific key. The same key is always mapped to the
+     * same shard.
+     */
+    public ExecutorService getShard(@NotNull Object key)
+    {
+        return shards[Math.floorMod(key.hashCode(), shards.length)];
+    }
+
+    /**
+     * Gets the shard for a specific numeric key (without boxing it). The same
+     * key is always mapped to the same shard.
+     */
+    public ExecutorService getShard(long key)
+    {
+        return shards[Math.floorMod(Long.hashCode(key), shards.length)];
+    }
+
+    public int getNumShards()
+    {
+        return shards.length;
+    }
+
+    public void shutdownNow()
+    {
+        for (Shard shard : shards)
+        {
+            shard.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets a snapshot of the statistics of the shards in JSON format.
+     */
+    @SuppressWarnings("unchecked")
+    public JSONObject getStatsJson()
+    {
+        JSONObject stats = new JSONObject();
+        stats.put("num_shards", shards.length);
+        long totalQueueDepth = 0;
+        for (Shard shard : shards)
+        {
+            JSONObject shardStats = new JSONObject();
+            int queueDepth = shard.getQueue().size();
+            totalQueueDepth += queueDepth;
+            shardStats.put("queue_depth", queueDepth);
+            shardStats.put("completed_task_count", shard.getCompletedTaskCount());
+            shardStats.put("queue_delay", shard.queueDelayStats.toJson());
+            stats.put(shard.name, shardStats);
+        }
+        stats.put("total_queue_depth", totalQueueDepth);
+        return stats;
+    }
+
+    /**
+     * A single-threaded executor which keeps track of how long tasks wait in
+     * its queue.
+     */
+    private static class Shard extends ThreadPoolExecutor
+    {
+        private final String name;
+
+        private final DelayStats queueDelayStats = new DelayStats(QUEUE_DELAY_THRESHOLDS);
+
+        Shard(String name, int maxQueueSize)
+        {
+            super(
+                1,
+                1,
+                0L,
+                TimeUnit.MILLISECONDS,
+                maxQueueSize > 0 ? new LinkedBlockingQueue<>(maxQueueSize) : new LinkedBlockingQueue<>(),
+                new NameableThreadFactory(name));
+            this.name = name;
+        }
+
+        @Override
+        public void execute(@NotNull Runnable command)
+        {
+            super.execute(new TimedTask(command));
+        }
+
+        private class TimedTask implements Runnable
+        {
+            private final Runnable task;
+
+            private final long enqueuedNanos = System.nanoTime();
+
+            TimedTask(Runnable task)
+            {
+                this.task = task;
+            }
+
+            @Override
+            public void run()
+            {
+                queueDelayStats.addDelay(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enqueuedNanos));
+                task.run();
+            }
+        }
+    }
+}
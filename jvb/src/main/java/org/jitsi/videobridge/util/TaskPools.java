@@ -16,8 +16,10 @@
 
 package org.jitsi.videobridge.util;
 
+import org.jitsi.nlj.stats.*;
 import org.jitsi.nlj.util.*;
 import org.jitsi.utils.logging2.*;
+import org.jitsi.videobridge.util.config.*;
 import org.json.simple.*;
 
 import java.util.concurrent.*;
@@ -41,9 +43,65 @@
                     new NameableThreadFactory("Global CPU pool")
             );
 
+    /**
+     * A bounded pool for handling the messages received from endpoints. Each
+     * endpoint submits its messages through its own {@link SerialExecutor},
+     * so that they are handled in order and one endpoint can't occupy all of
+     * the threads.
+     */
+    public static final ExecutorService MESSAGE_POOL =
+            Executors.newFixedThreadPool(
+                    getNumMessageThreads(),
+                    new NameableThreadFactory("Global message pool")
+            );
+
+    /**
+     * The time (in milliseconds) messages wait in the {@link SerialExecutor}s
+     * of endpoints before they are handled on {@link #MESSAGE_POOL}.
+     */
+    public static final DelayStats MESSAGE_QUEUE_DELAY_STATS
+            = new DelayStats(new long[] { 0, 1, 5, 20, 100, 1000 });
+
     public static final ScheduledExecutorService SCHEDULED_POOL =
             Executors.newSingleThreadScheduledExecutor(new NameableThreadFactory("Global scheduled pool"));
 
+    /**
+     * Single-threaded executors to which the packet processing of endpoints is
+     * pinned, or {@code null} if they are disabled and {@link #CPU_POOL} is
+     * used instead. NOTE that tasks which block should NOT use these!
+     */
+    public static final ShardedExecutor CPU_SHARDS = createCpuShards();
+
+    private static ShardedExecutor createCpuShards()
+    {
+        if (!TaskPoolsConfig.config.getCpuShardsEnabled())
+        {
+            return null;
+        }
+        int numShards = TaskPoolsConfig.config.getNumCpuShards();
+        if (numShards <= 0)
+        {
+            numShards = Runtime.getRuntime().availableProcessors();
+        }
+        return new ShardedExecutor("CPU shard", numShards);
+    }
+
+    private static int getNumMessageThreads()
+    {
+        int numThreads = TaskPoolsConfig.config.getNumMessageThreads();
+        return numThreads > 0 ? numThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Gets an executor for the CPU-intensive work of a new user (e.g. an
+     * endpoint), which should use it for all of its work so that it runs on
+     * a single thread.
+     */
+    public static ExecutorService getCpuShard()
+    {
+        return CPU_SHARDS == null ? CPU_POOL : CPU_SHARDS.nextShard();
+    }
+
     @SuppressWarnings("unchecked")
     public static JSONObject getStatsJson(ExecutorService es)
     {
@@ -73,6 +131,13 @@ public static JSONObject getStatsJson()
 
         debugState.put("IO_POOL", getStatsJson(IO_POOL));
         debugState.put("CPU_POOL", getStatsJson(CPU_POOL));
+        JSONObject messagePoolStats = getStatsJson(MESSAGE_POOL);
+        messagePoolStats.put("queue_delay", MESSAGE_QUEUE_DELAY_STATS.toJson());
+        debugState.put("MESSAGE_POOL", messagePoolStats);
+        if (CPU_SHARDS != null)
+        {
+            debugState.put("CPU_SHARDS", CPU_SHARDS.getStatsJson());
+        }
 
         return debugState;
     }
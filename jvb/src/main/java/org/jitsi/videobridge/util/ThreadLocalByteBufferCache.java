@@ -0,0 +1,177 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.util;
+
+import org.jetbrains.annotations.*;
+import org.json.simple.*;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A per-thread cache of buffers in front of a shared
+ * {@link PartitionedByteBufferPool}, similar to jemalloc's tcache. Each thread
+ * has a "magazine" (a small stack) of buffers, and only goes to the shared
+ * pool when its magazine is empty (on a request) or full (on a return). When
+ * the magazine is full, half of it is spilled to the shared pool at once, so
+ * that a thread which mostly returns buffers touches the shared pool once
+ * every {@code capacity / 2} returns.
+ */
+class ThreadLocalByteBufferCache
+{
+    /**
+     * The shared pool behind this cache.
+     */
+    private final PartitionedByteBufferPool pool;
+
+    /**
+     * The size of the buffers in {@link #pool}. Smaller buffers are not
+     * cached.
+     */
+    private final int defaultBufferSize;
+
+    /**
+     * The maximum number of buffers in a thread's magazine.
+     */
+    private final int capacity;
+
+    private final ThreadLocal<Magazine> magazines;
+
+    /**
+     * The number of requests which were satisfied from a thread's magazine.
+     */
+    private final LongAdder numHits = new LongAdder();
+
+    /**
+     * The number of requests which had to go to the shared pool.
+     */
+    private final LongAdder numMisses = new LongAdder();
+
+    /**
+     * The number of times a full magazine was spilled to the shared pool.
+     */
+    private final LongAdder numSpills = new LongAdder();
+
+    ThreadLocalByteBufferCache(
+        PartitionedByteBufferPool pool,
+        int defaultBufferSize,
+        int capacity)
+    {
+        if (capacity < 2)
+        {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.pool = pool;
+        this.defaultBufferSize = defaultBufferSize;
+        this.capacity = capacity;
+        this.magazines = ThreadLocal.withInitial(() -> new Magazine(capacity));
+    }
+
+    /**
+     * Returns a buffer from the current thread's magazine, or from the shared
+     * pool if the magazine is empty.
+     *
+     * @param size the minimum size.
+     */
+    byte[] getBuffer(int size)
+    {
+        if (size <= defaultBufferSize)
+        {
+            byte[] buf = magazines.get().pop();
+            if (buf != null)
+            {
+                numHits.increment();
+                return buf;
+            }
+        }
+
+        numMisses.increment();
+        return pool.getBuffer(size);
+    }
+
+    /**
+     * Returns a buffer to the current thread's magazine, spilling half of the
+     * magazine to the shared pool if it is full.
+     */
+    void returnBuffer(@NotNull byte[] buf)
+    {
+        if (buf.length < defaultBufferSize)
+        {
+            // Let the shared pool decide what to do with it (and count it).
+            pool.returnBuffer(buf);
+            return;
+        }
+
+        Magazine magazine = magazines.get();
+        if (magazine.size == capacity)
+        {
+            numSpills.increment();
+            while (magazine.size > capacity / 2)
+            {
+                pool.returnBuffer(magazine.pop());
+            }
+        }
+        magazine.push(buf);
+    }
+
+    /**
+     * Gets a snapshot of the statistics of this cache in JSON format.
+     */
+    @SuppressWarnings("unchecked")
+    JSONObject getStats()
+    {
+        JSONObject stats = new JSONObject();
+        long hits = numHits.sum();
+        long misses = numMisses.sum();
+        stats.put("capacity", capacity);
+        stats.put("num_hits", hits);
+        stats.put("num_misses", misses);
+        stats.put("num_spills", numSpills.sum());
+        stats.put("hit_percent", 100D * hits / Math.max(1, hits + misses));
+        return stats;
+    }
+
+    /**
+     * A stack of buffers which is only ever accessed by a single thread.
+     */
+    private static class Magazine
+    {
+        private final byte[][] buffers;
+
+        private int size = 0;
+
+        Magazine(int capacity)
+        {
+            buffers = new byte[capacity][];
+        }
+
+        byte[] pop()
+        {
+            if (size == 0)
+            {
+                return null;
+            }
+            byte[] buf = buffers[--size];
+            buffers[size] = null;
+            return buf;
+        }
+
+        void push(byte[] buf)
+        {
+            buffers[size++] = buf;
+        }
+    }
+}
@@ -24,6 +24,33 @@ class EndpointMessageTransportConfig {
     val announceVersion: Boolean by config("videobridge.version.announce".from(newConfig))
     fun announceVersion() = announceVersion
 
+    /**
+     * Whether messages to an endpoint are sent through a bounded queue, which coalesces superseded messages and sends
+     * control messages before relayed endpoint messages.
+     */
+    val outgoingQueueEnabled: Boolean by config("videobridge.bridge-channel.outgoing-queue.enabled".from(newConfig))
+    fun outgoingQueueEnabled() = outgoingQueueEnabled
+
+    /**
+     * The maximum total size (in bytes) of the messages queued for an endpoint.
+     */
+    val outgoingQueueMaxSize: Int by config("videobridge.bridge-channel.outgoing-queue.max-size".from(newConfig))
+    fun outgoingQueueMaxSize() = outgoingQueueMaxSize
+
+    /**
+     * The maximum number of messages from an endpoint waiting to be handled.
+     */
+    val incomingMaxQueuedMessages: Int by config(
+        "videobridge.bridge-channel.incoming.max-queued-messages".from(newConfig)
+    )
+    fun incomingMaxQueuedMessages() = incomingMaxQueuedMessages
+
+    /**
+     * The maximum number of messages accepted from an endpoint per second, or 0 for no limit.
+     */
+    val incomingMaxRate: Int by config("videobridge.bridge-channel.incoming.max-rate".from(newConfig))
+    fun incomingMaxRate() = incomingMaxRate
+
     companion object {
         @JvmField
         val config = EndpointMessageTransportConfig()
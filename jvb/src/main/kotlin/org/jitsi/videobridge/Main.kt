@@ -182,6 +182,8 @@ fun main(args: Array<String>) {
 
     TaskPools.SCHEDULED_POOL.shutdownNow()
     TaskPools.CPU_POOL.shutdownNow()
+    TaskPools.CPU_SHARDS?.shutdownNow()
+    TaskPools.MESSAGE_POOL.shutdownNow()
     TaskPools.IO_POOL.shutdownNow()
 }
 
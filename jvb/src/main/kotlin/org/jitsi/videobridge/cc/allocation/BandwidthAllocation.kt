@@ -31,15 +31,15 @@ class BandwidthAllocation @JvmOverloads constructor(
     /**
      * Whether the two allocations have the same endpoints and same layers.
      */
-    fun isTheSameAs(other: BandwidthAllocation) =
-        allocations.size == other.allocations.size &&
-            oversending == other.oversending &&
-            allocations.all { allocation ->
-                other.allocations.any { otherAllocation ->
-                    allocation.endpointId == otherAllocation.endpointId &&
-                        allocation.targetLayer?.index == otherAllocation.targetLayer?.index
-                }
-            }
+    fun isTheSameAs(other: BandwidthAllocation): Boolean {
+        if (allocations.size != other.allocations.size || oversending != other.oversending) {
+            return false
+        }
+        val otherTargets = other.allocations.mapTo(HashSet(other.allocations.size * 2)) {
+            Pair(it.endpointId, it.targetLayer?.index)
+        }
+        return allocations.all { otherTargets.contains(Pair(it.endpointId, it.targetLayer?.index)) }
+    }
 
     override fun toString(): String = "oversending=$oversending " + allocations.joinToString()
 }
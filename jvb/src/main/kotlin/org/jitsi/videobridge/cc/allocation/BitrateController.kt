@@ -48,7 +48,12 @@ class BitrateController<T : MediaSourceContainer> @JvmOverloads constructor(
     endpointsSupplier: Supplier<List<T>>,
     private val diagnosticContext: DiagnosticContext,
     parentLogger: Logger,
-    private val clock: Clock = Clock.systemUTC()
+    private val clock: Clock = Clock.systemUTC(),
+    /**
+     * The snapshots of the layer bitrates of the conference's sources, which should be shared by all endpoints in
+     * the conference.
+     */
+    layerBitrateSnapshots: LayerBitrateSnapshots = LayerBitrateSnapshots(clock)
 ) {
     val eventEmitter = EventEmitter<EventHandler>()
 
@@ -86,7 +91,8 @@ class BitrateController<T : MediaSourceContainer> @JvmOverloads constructor(
             Supplier { trustBwe },
             parentLogger,
             diagnosticContext,
-            clock
+            clock,
+            layerBitrateSnapshots
         )
 
     private val allocationSettingsWrapper = AllocationSettingsWrapper()
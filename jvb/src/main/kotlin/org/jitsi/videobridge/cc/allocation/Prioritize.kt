@@ -19,6 +19,7 @@ import org.jitsi.videobridge.calculateLastN
 import org.jitsi.videobridge.jvbLastNSingleton
 import org.jitsi.videobridge.load_management.ConferenceSizeLastNLimits.Companion.singleton as conferenceSizeLimits
 import java.util.ArrayList
+import java.util.HashMap
 
 /**
  * TODO: take into account whether selected endpoints are sending video. Currently, a selected endpoint without
@@ -39,21 +40,20 @@ fun <T : MediaSourceContainer?> prioritize(
     conferenceEndpoints: List<T>
 ): List<T> {
     val orderedEndpoints = ArrayList<T>(conferenceEndpoints.size)
+    // Index the endpoints, so that this is linear rather than quadratic in the size of the conference. If IDs are
+    // repeated, the first endpoint wins.
+    val endpointsById = HashMap<String, T>(conferenceEndpoints.size * 2)
+    conferenceEndpoints.forEach { endpointsById.putIfAbsent(it!!.id, it) }
 
-    selectedEndpointIds.forEach {
-        conferenceEndpoints
-            .stream()
-            .filter { e: T -> e!!.id == it }
-            .findFirst().ifPresent { e: T -> orderedEndpoints.add(e) }
+    selectedEndpointIds.forEach { id ->
+        endpointsById[id]?.let { orderedEndpoints.add(it) }
     }
 
-    val remainingEndpointIds: MutableList<String> = ArrayList(endpointIdsBySpeechActivity)
-    remainingEndpointIds.removeAll(selectedEndpointIds)
-    remainingEndpointIds.forEach {
-        conferenceEndpoints
-            .stream()
-            .filter { e: T -> e!!.id == it }
-            .findFirst().ifPresent { e: T -> orderedEndpoints.add(e) }
+    val selectedEndpointIdsSet = selectedEndpointIds.toHashSet()
+    endpointIdsBySpeechActivity.forEach { id ->
+        if (!selectedEndpointIdsSet.contains(id)) {
+            endpointsById[id]?.let { orderedEndpoints.add(it) }
+        }
     }
     return orderedEndpoints
 }
@@ -122,5 +122,16 @@ class BitrateControllerConfig {
 
         @JvmStatic
         fun maxTimeBetweenCalculations() = maxTimeBetweenCalculations
+
+        /**
+         * The window within which the triggers for a new bandwidth allocation for an endpoint are coalesced into a
+         * single allocation, which runs off the thread that triggered it. Zero disables coalescing.
+         */
+        private val allocationCoalescingWindow: Duration by config(
+            "videobridge.cc.allocation-coalescing-window".from(JitsiConfig.newConfig)
+        )
+
+        @JvmStatic
+        fun allocationCoalescingWindow() = allocationCoalescingWindow
     }
 }
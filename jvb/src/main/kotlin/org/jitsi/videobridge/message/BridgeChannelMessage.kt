@@ -22,14 +22,20 @@ import com.fasterxml.jackson.annotation.JsonInclude
 import com.fasterxml.jackson.annotation.JsonProperty
 import com.fasterxml.jackson.annotation.JsonSubTypes
 import com.fasterxml.jackson.annotation.JsonTypeInfo
+import com.fasterxml.jackson.core.JsonFactory
+import com.fasterxml.jackson.core.JsonParser
 import com.fasterxml.jackson.core.JsonProcessingException
+import com.fasterxml.jackson.core.JsonToken
 import com.fasterxml.jackson.databind.JsonMappingException
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.ObjectReader
+import com.fasterxml.jackson.databind.ObjectWriter
 import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
-import com.fasterxml.jackson.module.kotlin.readValue
 import org.apache.logging.log4j.util.Strings.isEmpty
 import org.jitsi.videobridge.cc.allocation.VideoConstraints
 import org.json.simple.JSONObject
+import org.json.simple.JSONValue
+import java.io.IOException
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicLong
 
@@ -63,20 +69,57 @@ sealed class BridgeChannelMessage(
     val type: String
 ) {
     /**
-     * Serialize this [BridgeChannelMessage] to a string in JSON format. Note that this default implementation is very
-     * slow, which is why some of the messages that we serialize often override it with a custom optimized version.
+     * Serialize this [BridgeChannelMessage] to a string in JSON format. Note that this default implementation is
+     * slower than manual serialization, which is why some of the messages that we serialize often override it with a
+     * custom optimized version.
      */
-    open fun toJson(): String = ObjectMapper().writeValueAsString(this)
+    open fun toJson(): String = writer.writeValueAsString(this)
+
+    /**
+     * The JSON of this message, once it has been serialized for sending.
+     */
+    @Volatile
+    private var sentJson: String? = null
+
+    /**
+     * Serializes this message for sending, reusing the result of the first call, so that a message which is sent to
+     * many receivers (e.g. broadcast to every endpoint in a conference and over Octo) is only serialized once. A
+     * message must not be modified after it has been handed over for sending.
+     */
+    fun toJsonForSending(): String = sentJson ?: toJson().also { sentJson = it }
 
     companion object {
+        /**
+         * Creating an [ObjectMapper] is expensive, as is the introspection of the message classes that it caches. So
+         * we build the reader and writer once and share them: [ObjectReader] and [ObjectWriter] are immutable and
+         * thread safe.
+         */
+        private val reader: ObjectReader = jacksonObjectMapper().readerFor(BridgeChannelMessage::class.java)
+        private val writer: ObjectWriter = ObjectMapper().writer()
+
         @JvmStatic
         @Throws(JsonProcessingException::class, JsonMappingException::class)
         fun parse(string: String): BridgeChannelMessage {
-            return jacksonObjectMapper().readValue(string)
+            return ReceiverVideoConstraintsMessage.parseFast(string) ?: reader.readValue(string)
         }
     }
 }
 
+/**
+ * Creates the streaming parsers used to parse the messages which we receive often without data binding. It is thread
+ * safe.
+ */
+private val jsonFactory = JsonFactory()
+
+/**
+ * Thrown by a streaming parser when the input is valid JSON, but has something which it does not handle (e.g. an
+ * unknown field, or a value which Jackson would coerce), so that the message is left to the generic parser. It has no
+ * stack trace, and is only used to abort the parsing.
+ */
+private object UnsupportedJsonException : IOException() {
+    override fun fillInStackTrace(): Throwable = this
+}
+
 open class MessageHandler {
     private val receivedCounts = ConcurrentHashMap<String, AtomicLong>()
 
@@ -190,8 +233,18 @@ class EndpointMessage(val to: String) : BridgeChannelMessage(TYPE) {
     @JsonInclude(JsonInclude.Include.NON_NULL)
     var from: String? = null
 
+    /**
+     * The JSON this message was received as, if it was parsed with [parseForRelay]. Its custom fields are only parsed
+     * into [otherFields] if they are accessed; until then the message is serialized by splicing [from] into this JSON.
+     */
+    private var receivedJson: String? = null
+
+    private val otherFieldsDelegate = lazy {
+        receivedJson?.let { parseOtherFields(it) } ?: mutableMapOf()
+    }
+
     @get:JsonAnyGetter
-    val otherFields = mutableMapOf<String, Any>()
+    val otherFields: MutableMap<String, Any> by otherFieldsDelegate
 
     /**
      * Whether this message is to be broadcast or targeted to a specific endpoint.
@@ -204,17 +257,85 @@ class EndpointMessage(val to: String) : BridgeChannelMessage(TYPE) {
     }
 
     /**
-     * Serialize using json-simple because it's faster.
+     * Serialize using json-simple because it's faster, or by splicing [from] into the received JSON, which is faster
+     * still.
      */
-    override fun toJson(): String = JSONObject().apply {
-        this["colibriClass"] = TYPE
-        from?.let { this["from"] = it }
-        this["to"] = to
-        putAll(otherFields)
-    }.toJSONString()
+    override fun toJson(): String {
+        val json = receivedJson
+        if (json != null && !otherFieldsDelegate.isInitialized()) {
+            return from?.let { spliceFrom(json, it) } ?: json
+        }
+
+        return JSONObject().apply {
+            this["colibriClass"] = TYPE
+            from?.let { this["from"] = it }
+            this["to"] = to
+            putAll(otherFields)
+        }.toJSONString()
+    }
 
     companion object {
         const val TYPE = "EndpointMessage"
+
+        private val mapReader: ObjectReader = ObjectMapper().readerFor(LinkedHashMap::class.java)
+
+        /**
+         * Parses [json] for relaying if it is an [EndpointMessage], by scanning it for its "colibriClass" and "to"
+         * fields without building the rest of the message. Returns null if it is not an [EndpointMessage] or it
+         * can't be relayed as is (e.g. it is invalid, or has a "from" field which would have to be replaced), in
+         * which case it should be parsed with [BridgeChannelMessage.parse].
+         */
+        @JvmStatic
+        fun parseForRelay(json: String): EndpointMessage? {
+            // Most messages are of other types, and will be parsed in full. Don't tokenize them twice.
+            if (!json.contains(TYPE)) {
+                return null
+            }
+
+            var colibriClass: String? = null
+            var to: String? = null
+            try {
+                jsonFactory.createParser(json).use { parser ->
+                    if (parser.nextToken() != JsonToken.START_OBJECT) {
+                        return null
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        val name = parser.currentName
+                        val value = if (parser.nextToken() == JsonToken.VALUE_STRING) parser.text else null
+                        when (name) {
+                            "colibriClass" -> colibriClass = if (value == TYPE) value else return null
+                            "to" -> to = value ?: return null
+                            "from" -> return null
+                            else -> parser.skipChildren()
+                        }
+                    }
+                    if (parser.currentToken != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                        return null
+                    }
+                }
+            } catch (e: IOException) {
+                return null
+            }
+
+            if (colibriClass != TYPE) {
+                return null
+            }
+            return to?.let { EndpointMessage(it).apply { receivedJson = json } }
+        }
+
+        /**
+         * Inserts a "from" field at the start of [json], which is known to be an object without one.
+         */
+        private fun spliceFrom(json: String, from: String): String {
+            val start = json.indexOf('{') + 1
+            return json.substring(0, start) + "\"from\":\"" + JSONValue.escape(from) + "\"," + json.substring(start)
+        }
+
+        private fun parseOtherFields(json: String): MutableMap<String, Any> =
+            mapReader.readValue<LinkedHashMap<String, Any>>(json).apply {
+                remove("colibriClass")
+                remove("to")
+            }
     }
 }
 
@@ -385,5 +506,128 @@ class ReceiverVideoConstraintsMessage(
 ) : BridgeChannelMessage(TYPE) {
     companion object {
         const val TYPE = "ReceiverVideoConstraints"
+
+        /**
+         * Parses [json] with a streaming parser if it is a [ReceiverVideoConstraintsMessage], which clients send
+         * every time their layout changes. This is several times faster than the polymorphic data binding in
+         * [BridgeChannelMessage.parse]. Returns null if [json] is of another type, or has anything that Jackson
+         * would treat specially (unknown fields, nulls or values which need coercion inside lists and constraints,
+         * invalid JSON), so that the caller can fall back to Jackson, which either handles it or fails as usual.
+         */
+        fun parseFast(json: String): ReceiverVideoConstraintsMessage? {
+            // Most messages are of other types. Don't tokenize them twice.
+            if (!json.contains(TYPE)) {
+                return null
+            }
+
+            var colibriClass: String? = null
+            var lastN: Int? = null
+            var selectedEndpoints: List<String>? = null
+            var onStageEndpoints: List<String>? = null
+            var defaultConstraints: VideoConstraints? = null
+            var constraints: Map<String, VideoConstraints>? = null
+            try {
+                jsonFactory.createParser(json).use { parser ->
+                    if (parser.nextToken() != JsonToken.START_OBJECT) {
+                        return null
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        when (parser.currentName) {
+                            "colibriClass" -> colibriClass = parser.nextTextValue() ?: return null
+                            "lastN" -> lastN = when (parser.nextToken()) {
+                                JsonToken.VALUE_NUMBER_INT -> parser.intValue
+                                JsonToken.VALUE_NULL -> null
+                                else -> return null
+                            }
+                            "selectedEndpoints" -> selectedEndpoints = parser.nextStringList()
+                            "onStageEndpoints" -> onStageEndpoints = parser.nextStringList()
+                            "defaultConstraints" -> defaultConstraints = when (parser.nextToken()) {
+                                JsonToken.START_OBJECT -> parser.readVideoConstraints()
+                                JsonToken.VALUE_NULL -> null
+                                else -> return null
+                            }
+                            "constraints" -> constraints = when (parser.nextToken()) {
+                                JsonToken.START_OBJECT -> parser.readVideoConstraintsMap()
+                                JsonToken.VALUE_NULL -> null
+                                else -> return null
+                            }
+                            else -> return null
+                        }
+                    }
+                    if (parser.currentToken != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                        return null
+                    }
+                }
+            } catch (e: IOException) {
+                return null
+            }
+
+            if (colibriClass != TYPE) {
+                return null
+            }
+            return ReceiverVideoConstraintsMessage(
+                lastN,
+                selectedEndpoints,
+                onStageEndpoints,
+                defaultConstraints,
+                constraints
+            )
+        }
+
+        /**
+         * Reads the next value, which must be null or an array of strings.
+         */
+        private fun JsonParser.nextStringList(): List<String>? = when (nextToken()) {
+            JsonToken.VALUE_NULL -> null
+            JsonToken.START_ARRAY -> ArrayList<String>().apply {
+                while (nextToken() == JsonToken.VALUE_STRING) {
+                    add(text)
+                }
+                if (currentToken != JsonToken.END_ARRAY) {
+                    throw UnsupportedJsonException
+                }
+            }
+            else -> throw UnsupportedJsonException
+        }
+
+        /**
+         * Reads an object of [VideoConstraints] by endpoint ID, from its [JsonToken.START_OBJECT].
+         */
+        private fun JsonParser.readVideoConstraintsMap(): Map<String, VideoConstraints> =
+            LinkedHashMap<String, VideoConstraints>().apply {
+                while (nextToken() == JsonToken.FIELD_NAME) {
+                    val endpointId = currentName
+                    if (nextToken() != JsonToken.START_OBJECT) {
+                        throw UnsupportedJsonException
+                    }
+                    put(endpointId, readVideoConstraints())
+                }
+            }
+
+        /**
+         * Reads a [VideoConstraints] object, from its [JsonToken.START_OBJECT]. Like Jackson, it ignores unknown
+         * fields.
+         */
+        private fun JsonParser.readVideoConstraints(): VideoConstraints {
+            var maxHeight: Int? = null
+            var maxFrameRate = -1.0
+            while (nextToken() == JsonToken.FIELD_NAME) {
+                when (currentName) {
+                    "maxHeight" -> maxHeight = when (nextToken()) {
+                        JsonToken.VALUE_NUMBER_INT -> intValue
+                        else -> throw UnsupportedJsonException
+                    }
+                    "maxFrameRate" -> maxFrameRate = when (nextToken()) {
+                        JsonToken.VALUE_NUMBER_INT, JsonToken.VALUE_NUMBER_FLOAT -> doubleValue
+                        else -> throw UnsupportedJsonException
+                    }
+                    else -> {
+                        nextToken()
+                        skipChildren()
+                    }
+                }
+            }
+            return VideoConstraints(maxHeight ?: throw UnsupportedJsonException, maxFrameRate)
+        }
     }
 }
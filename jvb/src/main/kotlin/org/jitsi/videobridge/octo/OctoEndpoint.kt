@@ -30,6 +30,7 @@ import org.jitsi.videobridge.cc.allocation.VideoConstraints
 import org.jitsi.videobridge.message.AddReceiverMessage
 import org.jitsi.videobridge.message.BridgeChannelMessage
 import org.jitsi.videobridge.message.RemoveReceiverMessage
+import org.jitsi.videobridge.octo.config.OctoConfig
 
 /**
  * Represents an endpoint in a conference, which is connected to another
@@ -68,6 +69,11 @@ class OctoEndpoint(
 
     init {
         conference.tentacle.addHandler(id, this)
+        if (OctoConfig.config.demandDrivenForwarding) {
+            // Let the sending bridge know that we advertise our receivers, so
+            // it doesn't relay this endpoint's video until we have some.
+            maxReceiverVideoConstraintsChanged(VideoConstraints(0))
+        }
     }
 
     override fun handleIncomingPacket(packetInfo: OctoPacketInfo) {
@@ -108,7 +114,7 @@ class OctoEndpoint(
         )
     }
 
-    override fun receivesSsrc(ssrc: Long): Boolean = transceiver.receivesSsrc(ssrc)
+    override fun receivesSsrc(ssrc: Long): Boolean = conference.findEndpointByReceiveSSRC(ssrc) === this
 
     override fun addReceiveSsrc(ssrc: Long, mediaType: MediaType?) {
         // This is controlled through setReceiveSsrcs.
@@ -143,6 +149,7 @@ class OctoEndpoint(
      */
     fun setReceiveSsrcs(ssrcsByMediaType: Map<MediaType, Set<Long>>) {
         transceiver.setReceiveSsrcs(ssrcsByMediaType)
+        conference.setReceiveSsrcs(this, ssrcsByMediaType.values.flatten())
     }
 
     // The endpoint is sending audio if our Receiver object is receiving audio from the endpoint.
@@ -20,6 +20,7 @@ import org.jitsi.utils.logging2.LoggerImpl
 import org.jitsi.videobridge.octo.config.OctoConfig.Companion.config
 import org.jitsi.videobridge.transport.octo.BridgeOctoTransport
 import org.jitsi.videobridge.transport.udp.UdpTransport
+import org.jitsi.videobridge.util.ShardedExecutor
 import org.jitsi.videobridge.util.TaskPools
 import java.net.SocketAddress
 import java.net.SocketException
@@ -43,6 +44,12 @@ class OctoRelayService {
      */
     val bridgeOctoTransport: BridgeOctoTransport
 
+    /**
+     * The threads which handle incoming Octo packets, if not handled on the
+     * [udpTransport] reader thread.
+     */
+    private val ingestShards: ShardedExecutor?
+
     init {
         if (!config.enabled) {
             throw IllegalStateException("Octo relay service is not enabled")
@@ -53,7 +60,15 @@ class OctoRelayService {
         val port = config.bindPort
 
         try {
-            udpTransport = UdpTransport(address, port, logger, OCTO_SO_RCVBUF, OCTO_SO_SNDBUF)
+            udpTransport = UdpTransport(
+                address,
+                port,
+                logger,
+                OCTO_SO_RCVBUF,
+                OCTO_SO_SNDBUF,
+                config.receiveBatchSize,
+                config.udpSendQueueSize
+            )
         } catch (t: Throwable) {
             when (t) {
                 is UnknownHostException, is SocketException -> {
@@ -71,9 +86,22 @@ class OctoRelayService {
         }
         logger.info("Created Octo UDP transport")
 
-        bridgeOctoTransport = BridgeOctoTransport("$publicAddress:$port", logger)
+        ingestShards = if (config.ingestThreads > 0) {
+            ShardedExecutor("Octo ingest", config.ingestThreads, config.ingestQueueSize)
+        } else {
+            null
+        }
+        bridgeOctoTransport = BridgeOctoTransport(
+            "$publicAddress:$port",
+            logger,
+            if (config.batchingEnabled) config.batchMaxSize else 0,
+            config.batchMaxDelay,
+            ingestShards
+        )
 
-        // Wire the data coming from the UdpTransport to the OctoTransport
+        // Wire the data coming from the UdpTransport to the OctoTransport. The
+        // buffers are handed over, so the OctoTransport can use them for
+        // packets without a copy.
         udpTransport.incomingDataHandler = object : UdpTransport.IncomingDataHandler {
             override fun dataReceived(data: ByteArray, offset: Int, length: Int, receivedTime: Instant) {
                 bridgeOctoTransport.dataReceived(data, offset, length, receivedTime)
@@ -82,19 +110,23 @@ class OctoRelayService {
         // Wire the data going out of OctoTransport to UdpTransport
         bridgeOctoTransport.outgoingDataHandler = object : BridgeOctoTransport.OutgoingOctoPacketHandler {
             override fun sendData(data: ByteArray, off: Int, length: Int, remoteAddresses: Collection<SocketAddress>) {
-                udpTransport.send(data, off, length, remoteAddresses)
+                udpTransport.enqueue(data, off, length, remoteAddresses)
             }
         }
     }
 
     fun start() {
         TaskPools.IO_POOL.submit { udpTransport.startReadingData() }
+        if (config.udpSendQueueSize > 0) {
+            TaskPools.IO_POOL.submit { udpTransport.startSendingData() }
+        }
     }
 
     fun stop() {
         logger.info("Stopping")
         udpTransport.stop()
         bridgeOctoTransport.stop()
+        ingestShards?.shutdownNow()
     }
 
     fun getStats(): Stats {
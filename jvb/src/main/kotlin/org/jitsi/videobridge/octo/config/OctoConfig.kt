@@ -21,12 +21,65 @@ import org.jitsi.metaconfig.ConfigException
 import org.jitsi.metaconfig.config
 import org.jitsi.metaconfig.from
 import org.jitsi.metaconfig.optionalconfig
+import java.time.Duration
 
 class OctoConfig {
     val recvQueueSize: Int by config("videobridge.octo.recv-queue-size".from(JitsiConfig.newConfig))
 
     val sendQueueSize: Int by config("videobridge.octo.send-queue-size".from(JitsiConfig.newConfig))
 
+    /**
+     * The maximum number of datagrams to read from the Octo socket in one
+     * wakeup of the reader thread. A value of 1 disables batching.
+     */
+    val receiveBatchSize: Int by config("videobridge.octo.receive-batch-size".from(JitsiConfig.newConfig))
+
+    /**
+     * The size of the queue of datagrams waiting to be sent out on the Octo
+     * socket by a dedicated sender thread. A value of 0 disables the queue,
+     * and datagrams are sent on the thread which produces them.
+     */
+    val udpSendQueueSize: Int by config("videobridge.octo.udp-send-queue-size".from(JitsiConfig.newConfig))
+
+    /**
+     * Whether video from local endpoints should only be relayed to the remote
+     * bridges which have receivers for it (as advertised with
+     * AddReceiverMessage), instead of to all remote bridges.
+     */
+    val demandDrivenForwarding: Boolean by config(
+        "videobridge.octo.demand-driven-forwarding".from(JitsiConfig.newConfig)
+    )
+
+    /**
+     * Whether to send the packets going to the same remote bridge in batches
+     * of several packets per datagram. All remote bridges need to support
+     * receiving batches.
+     */
+    val batchingEnabled: Boolean by config("videobridge.octo.batching.enabled".from(JitsiConfig.newConfig))
+
+    /**
+     * The maximum size of a datagram containing a batch.
+     */
+    val batchMaxSize: Int by config("videobridge.octo.batching.max-size".from(JitsiConfig.newConfig))
+
+    /**
+     * The maximum time that a packet waits for a batch to fill up.
+     */
+    val batchMaxDelay: Duration by config("videobridge.octo.batching.max-delay".from(JitsiConfig.newConfig))
+
+    /**
+     * The number of threads which handle the packets received over Octo
+     * (dispatched by conference), or 0 to handle them on the thread which
+     * reads them from the socket.
+     */
+    val ingestThreads: Int by config("videobridge.octo.ingest-threads".from(JitsiConfig.newConfig))
+
+    /**
+     * The maximum number of received packets waiting for each of the
+     * [ingestThreads]. Packets received while the queue is full are dropped.
+     */
+    val ingestQueueSize: Int by config("videobridge.octo.ingest-queue-size".from(JitsiConfig.newConfig))
+
     // We grab these two properties from the legacy config separately here
     // because we use them to infer a legacy value of 'enabled' (which was
     // based on the presence of these properties) and as potential values
@@ -27,12 +27,15 @@ import org.ice4j.ice.LocalCandidate
 import org.ice4j.ice.RemoteCandidate
 import org.ice4j.socket.SocketClosedException
 import org.jitsi.nlj.util.OrderedJsonObject
+import org.jitsi.rtp.Packet
+import org.jitsi.rtp.rtp.RtpPacket
 import org.jitsi.utils.logging2.Logger
 import org.jitsi.utils.logging2.cdebug
 import org.jitsi.utils.logging2.createChildLogger
 import org.jitsi.videobridge.ice.Harvesters
 import org.jitsi.videobridge.ice.IceConfig
 import org.jitsi.videobridge.ice.TransportUtils
+import org.jitsi.videobridge.util.ByteBufferPool
 import org.jitsi.xmpp.extensions.jingle.CandidatePacketExtension
 import org.jitsi.xmpp.extensions.jingle.IceUdpTransportPacketExtension
 import org.jitsi.xmpp.extensions.jingle.RtcpmuxPacketExtension
@@ -57,13 +60,14 @@ class IceTransport @JvmOverloads constructor(
 
     /**
      * The handler which will be invoked when data is received.  The handler
-     * does *not* own the buffer passed to it, so a copy must be made if it wants
-     * to use the data after the handler call finishes.  This field should be
+     * *does* own the buffer passed to it (which comes from [ByteBufferPool]),
+     * and is responsible for returning it to the pool.  This field should be
      * set by some other entity which wishes to handle the incoming data
      * received over the ICE connection.
-     * NOTE: we don't create a packet in [IceTransport] because
-     * RTP packets want space before and after and [IceTransport]
-     * has no notion of what kind of data is contained within the buffer.
+     * NOTE: we don't create a packet in [IceTransport] because it has no
+     * notion of what kind of data is contained within the buffer, but the
+     * data is read leaving the room which RTP packets want before and after
+     * it, so that it can be turned into a packet without a copy.
      */
     @JvmField
     var incomingDataHandler: IncomingDataHandler? = null
@@ -191,25 +195,38 @@ class IceTransport @JvmOverloads constructor(
     fun startReadingData() {
         logger.cdebug { "Starting to read incoming data" }
         val socket = iceComponent.socket
-        val receiveBuf = ByteArray(1500)
-        val packet = DatagramPacket(receiveBuf, 0, receiveBuf.size)
+        val packet = DatagramPacket(EMPTY_BUFFER, 0, 0)
         var receivedTime: Instant
 
         while (running.get()) {
+            // Read straight into a pooled buffer which leaves room for the RTP
+            // stack before and after the data, so that the handler can use it
+            // without making a copy.
+            val buf = ByteBufferPool.getBuffer(
+                RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET + RECEIVE_BUFFER_SIZE + Packet.BYTES_TO_LEAVE_AT_END_OF_PACKET
+            )
+            packet.setData(
+                buf,
+                RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET,
+                buf.size - RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET - Packet.BYTES_TO_LEAVE_AT_END_OF_PACKET
+            )
             try {
                 socket.receive(packet)
                 receivedTime = clock.instant()
             } catch (e: SocketClosedException) {
                 logger.info("Socket closed, stopping reader")
+                ByteBufferPool.returnBuffer(buf)
                 break
             } catch (e: IOException) {
                 logger.warn("Stopping reader", e)
+                ByteBufferPool.returnBuffer(buf)
                 break
             }
             packetStats.numPacketsReceived++
-            incomingDataHandler?.dataReceived(receiveBuf, packet.offset, packet.length, receivedTime) ?: run {
+            incomingDataHandler?.dataReceived(buf, packet.offset, packet.length, receivedTime) ?: run {
                 logger.cdebug { "Data handler is null, dropping data" }
                 packetStats.numIncomingPacketsDroppedNoHandler++
+                ByteBufferPool.returnBuffer(buf)
             }
         }
         logger.info("No longer running, stopped reading packets")
@@ -347,6 +364,13 @@ class IceTransport @JvmOverloads constructor(
     }
 
     companion object {
+        /**
+         * The largest datagram we read.
+         */
+        private const val RECEIVE_BUFFER_SIZE = 1500
+
+        private val EMPTY_BUFFER = ByteArray(0)
+
         fun appendHarvesters(iceAgent: Agent) {
             Harvesters.initializeStaticConfiguration()
             Harvesters.tcpHarvester?.let {
@@ -373,7 +397,8 @@ class IceTransport @JvmOverloads constructor(
     interface IncomingDataHandler {
         /**
          * Notify the handler that data was received (contained
-         * within [data] at [offset] with [length]) at [receivedTime]
+         * within [data] at [offset] with [length]) at [receivedTime].
+         * The handler takes ownership of [data].
          */
         fun dataReceived(data: ByteArray, offset: Int, length: Int, receivedTime: Instant)
     }
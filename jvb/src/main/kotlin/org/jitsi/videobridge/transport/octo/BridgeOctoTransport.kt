@@ -17,6 +17,7 @@
 package org.jitsi.videobridge.transport.octo
 
 import org.jitsi.nlj.PacketHandler
+import org.jitsi.nlj.util.NameableThreadFactory
 import org.jitsi.nlj.util.OrderedJsonObject
 import org.jitsi.rtp.Packet
 import org.jitsi.rtp.UnparsedPacket
@@ -26,14 +27,20 @@ import org.jitsi.utils.logging2.Logger
 import org.jitsi.utils.logging2.cdebug
 import org.jitsi.utils.logging2.createChildLogger
 import org.jitsi.videobridge.octo.OctoPacket
+import org.jitsi.videobridge.octo.OctoPacket.BATCH_ENTRY_HEADER_LENGTH
 import org.jitsi.videobridge.octo.OctoPacket.OCTO_HEADER_LENGTH
 import org.jitsi.videobridge.octo.OctoPacketInfo
 import org.jitsi.videobridge.transport.octo.OctoUtils.Companion.JVB_EP_ID
 import org.jitsi.videobridge.util.ByteBufferPool
+import org.jitsi.videobridge.util.LongObjectHashMap
+import org.jitsi.videobridge.util.ShardedExecutor
 import java.net.SocketAddress
 import java.nio.charset.StandardCharsets
+import java.time.Duration
 import java.time.Instant
-import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.atomic.AtomicLong
 import java.util.concurrent.atomic.LongAdder
 import kotlin.math.floor
@@ -47,10 +54,23 @@ import kotlin.math.log10
  * Other bridges can use this ID in order to discover the socket address that
  * this bridge is accessible on.  With the current implementation the ID just
  * encodes a pre-configured IP address and port, e.g. "10.0.0.1:20000"
+ *
+ * If [batchMaxSize] is positive, outgoing packets to the same remote bridge
+ * are sent in batches of up to [batchMaxSize] bytes, delaying them by at
+ * most [batchMaxDelay]. Incoming batches are always accepted.
+ *
+ * If [ingestShards] is set, incoming packets (including each packet of a
+ * batch) are handled on one of its shards (picked by conference ID, so the
+ * packets of a conference stay in order) instead of on the thread which reads
+ * them from the socket. Only splitting batches is left to the reading thread.
+ * Packets are dropped if the queue of their shard is full.
  */
-class BridgeOctoTransport(
+class BridgeOctoTransport @JvmOverloads constructor(
     val relayId: String,
-    parentLogger: Logger
+    parentLogger: Logger,
+    batchMaxSize: Int = 0,
+    batchMaxDelay: Duration = Duration.ZERO,
+    private val ingestShards: ShardedExecutor? = null
 ) {
     private val logger = createChildLogger(parentLogger, mapOf("relayId" to relayId))
 
@@ -58,15 +78,31 @@ class BridgeOctoTransport(
 
     /**
      * Handlers for incoming Octo packets.  Packets will be routed to a handler based on the conference
-     * ID in the Octo packet.
+     * ID in the Octo packet.  The map is read for every packet, so it is never modified: [addHandler]
+     * and [removeHandler] replace it with a modified copy, under [handlersLock].
      */
-    private val incomingPacketHandlers: MutableMap<Long, IncomingOctoPacketHandler> = ConcurrentHashMap()
+    @Volatile
+    private var incomingPacketHandlers = LongObjectHashMap<IncomingOctoPacketHandler>()
+
+    private val handlersLock = Any()
 
     /**
      * Maps how many Octo packets have been received for unknown conference IDs, to avoid
-     * spamming the error logs
+     * spamming the error logs. It holds at most [MAX_UNKNOWN_CONFERENCES] entries, and is
+     * only accessed when synchronized on it.
+     */
+    private val unknownConferences = LongObjectHashMap<AtomicLong>()
+
+    /**
+     * Limit the warnings about unknown conferences to
+     * [MAX_UNKNOWN_CONFERENCE_WARNINGS_PER_SECOND] per one second window:
+     * the start of the current window, the number of warnings logged in it,
+     * and the number suppressed since the last one was logged. Only accessed
+     * when synchronized on [unknownConferences].
      */
-    private val unknownConferences: MutableMap<Long, AtomicLong> = ConcurrentHashMap()
+    private var unknownConferenceWarningsWindowStartMs = 0L
+    private var unknownConferenceWarningsInWindow = 0
+    private var unknownConferenceWarningsSuppressed = 0L
 
     /**
      * The handler which will be invoked when this [BridgeOctoTransport] wants to
@@ -74,6 +110,22 @@ class BridgeOctoTransport(
      */
     var outgoingDataHandler: OutgoingOctoPacketHandler? = null
 
+    /**
+     * Sends the batches which are due. Batches are sent on the socket, so this
+     * uses its own thread rather than the shared scheduled pool.
+     */
+    private val batchFlusher: ScheduledExecutorService? = if (batchMaxSize > 0) {
+        Executors.newSingleThreadScheduledExecutor(NameableThreadFactory("Octo batch flusher"))
+    } else {
+        null
+    }
+
+    private val batcher: OctoPacketBatcher? = batchFlusher?.let {
+        OctoPacketBatcher(batchMaxSize, batchMaxDelay, it) { buf, off, len, targets ->
+            sendOut(buf, off, len, targets)
+        }
+    }
+
     init {
         logger.info("Created OctoTransport")
     }
@@ -87,10 +139,14 @@ class BridgeOctoTransport(
         }
         logger.info("Adding handler for conference $conferenceId")
 
-        synchronized(incomingPacketHandlers) {
-            incomingPacketHandlers.put(conferenceId, handler)?.let {
+        synchronized(handlersLock) {
+            val newHandlers = LongObjectHashMap(incomingPacketHandlers)
+            newHandlers.put(conferenceId, handler)?.let {
                 logger.warn("Replacing an existing packet handler for gid=$conferenceId")
             }
+            incomingPacketHandlers = newHandlers
+        }
+        synchronized(unknownConferences) {
             unknownConferences.remove(conferenceId)
         }
     }
@@ -99,15 +155,15 @@ class BridgeOctoTransport(
      * Removes the [PacketHandler] for the given [conferenceId] IFF the one
      * in the map is the same as [handler].
      */
-    fun removeHandler(conferenceId: Long, handler: IncomingOctoPacketHandler) = synchronized(incomingPacketHandlers) {
+    fun removeHandler(conferenceId: Long, handler: IncomingOctoPacketHandler) = synchronized(handlersLock) {
         // If the Colibri conference for this GID was re-created, and the
         // original Conference object is expired after a new packet handler
         // was registered, the new packet handler should not be removed (as
         // this would break the new conference).
-        incomingPacketHandlers[conferenceId]?.let {
+        incomingPacketHandlers.get(conferenceId)?.let {
             if (it == handler) {
                 logger.info("Removing handler for conference $conferenceId")
-                incomingPacketHandlers.remove(conferenceId)
+                incomingPacketHandlers = LongObjectHashMap(incomingPacketHandlers).apply { remove(conferenceId) }
             } else {
                 logger.info(
                     "Tried to remove handler for conference $conferenceId but it wasn't the currently " +
@@ -117,42 +173,79 @@ class BridgeOctoTransport(
         }
     }
 
+    /**
+     * Notifies this transport that [target] is no longer used by a
+     * conference, so any state kept for it can be dropped.
+     */
+    fun removeTarget(target: SocketAddress) {
+        batcher?.removeTarget(target)
+    }
+
     fun stop() {
+        batchFlusher?.shutdownNow()
     }
 
-    @Suppress("DEPRECATION")
+    /**
+     * Handle an incoming Octo packet.  Takes ownership of [buf], which is
+     * expected to come from [ByteBufferPool] and to have room for an RTP
+     * packet's head and tail room around the payload.
+     */
     fun dataReceived(buf: ByteArray, off: Int, len: Int, receivedTime: Instant) {
+        if (OctoPacket.isBatch(buf, off, len)) {
+            batchReceived(buf, off, len, receivedTime)
+        } else {
+            dispatch(buf, off, len, receivedTime)
+        }
+    }
+
+    /**
+     * Hands a single Octo packet (received on its own or as an entry of a
+     * batch) to the shard of its conference, or handles it right away if
+     * [ingestShards] is not set. Takes ownership of [buf].
+     */
+    private fun dispatch(buf: ByteArray, off: Int, len: Int, receivedTime: Instant) {
+        if (ingestShards == null) {
+            handlePacket(buf, off, len, receivedTime)
+            return
+        }
+
+        val conferenceId = try {
+            OctoPacket.readConferenceId(buf, off, len)
+        } catch (iae: IllegalArgumentException) {
+            logger.warn("Invalid Octo packet, len=$len", iae)
+            stats.invalidPacketReceived()
+            ByteBufferPool.returnBuffer(buf)
+            return
+        }
+        try {
+            ingestShards.getShard(conferenceId).execute { handlePacket(buf, off, len, receivedTime) }
+        } catch (e: RejectedExecutionException) {
+            // The shard's queue is full (or it is shutting down).
+            stats.ingestRejected()
+            ByteBufferPool.returnBuffer(buf)
+        }
+    }
+
+    @Suppress("DEPRECATION")
+    private fun handlePacket(buf: ByteArray, off: Int, len: Int, receivedTime: Instant) {
         var conferenceId: Long
         var mediaType: MediaType
-        var sourceEpId: String
+        var sourceEpId: Long
 
         try {
             conferenceId = OctoPacket.readConferenceId(buf, off, len)
             mediaType = OctoPacket.readMediaType(buf, off, len)
-            sourceEpId = OctoPacket.readEndpointId(buf, off, len)
+            sourceEpId = OctoPacket.readEndpointIdNumber(buf, off, len)
         } catch (iae: IllegalArgumentException) {
             logger.warn("Invalid Octo packet, len=$len", iae)
             stats.invalidPacketReceived()
+            ByteBufferPool.returnBuffer(buf)
             return
         }
 
-        val handler = incomingPacketHandlers[conferenceId] ?: run {
-            stats.noHandlerFound()
-            unknownConferences[conferenceId]?.let { unknownConfEventAdder ->
-                val value = unknownConfEventAdder.incrementAndGet()
-                // Only print log on exact powers of 10 packets received
-                val logValue = log10(value.toFloat())
-                if (logValue > 0 && logValue == floor(logValue)) {
-                    logger.warn("Received $value Octo packets for unknown conference $conferenceId")
-                }
-            } ?: run {
-                /* Potentially a race here if more than one packet arrives at once
-                 * for the same unknown conference? This will just result in a few
-                 * duplicate logs, though, so not a big deal.
-                 */
-                unknownConferences[conferenceId] = AtomicLong(1)
-                logger.warn("Received an Octo packet for an unknown conference: $conferenceId")
-            }
+        val handler = incomingPacketHandlers.get(conferenceId) ?: run {
+            unknownConferencePacketReceived(conferenceId)
+            ByteBufferPool.returnBuffer(buf)
             return
         }
         when (mediaType) {
@@ -160,15 +253,99 @@ class BridgeOctoTransport(
                 handler.handleMediaPacket(createPacketInfo(sourceEpId, buf, off, len, receivedTime))
             }
             MediaType.DATA -> {
-                handler.handleMessagePacket(createMessageString(buf, off, len), sourceEpId)
+                val message = createMessageString(buf, off, len)
+                ByteBufferPool.returnBuffer(buf)
+                handler.handleMessagePacket(message, OctoPacket.endpointIdToString(sourceEpId))
             }
             else -> {
                 logger.warn("Unsupported media type $mediaType")
                 stats.invalidPacketReceived()
+                ByteBufferPool.returnBuffer(buf)
+            }
+        }
+    }
+
+    private fun unknownConferencePacketReceived(conferenceId: Long) {
+        stats.noHandlerFound()
+        var suppressed = 0L
+        val value = synchronized(unknownConferences) {
+            val value = unknownConferences.get(conferenceId)?.incrementAndGet() ?: run {
+                if (unknownConferences.size() >= MAX_UNKNOWN_CONFERENCES) {
+                    // Start over rather than grow without bounds. We may log
+                    // the first packet of some conferences again (subject to
+                    // the rate limit below).
+                    unknownConferences.clear()
+                }
+                unknownConferences.put(conferenceId, AtomicLong(1))
+                1L
+            }
+            // Only log on the first packet and on exact powers of 10 packets received
+            val logValue = log10(value.toFloat())
+            if (logValue != floor(logValue)) {
+                return
+            }
+
+            // Packets with many different (e.g. random or stale) conference
+            // IDs would still log on every packet, so limit the rate of
+            // warnings across all conferences.
+            val nowMs = System.currentTimeMillis()
+            if (nowMs - unknownConferenceWarningsWindowStartMs >= 1000) {
+                unknownConferenceWarningsWindowStartMs = nowMs
+                unknownConferenceWarningsInWindow = 0
+            }
+            if (++unknownConferenceWarningsInWindow > MAX_UNKNOWN_CONFERENCE_WARNINGS_PER_SECOND) {
+                unknownConferenceWarningsSuppressed++
+                return
+            }
+            suppressed = unknownConferenceWarningsSuppressed
+            unknownConferenceWarningsSuppressed = 0
+            value
+        }
+        val suffix = if (suppressed > 0) " ($suppressed similar warnings suppressed)" else ""
+        if (value == 1L) {
+            logger.warn("Received an Octo packet for an unknown conference: $conferenceId$suffix")
+        } else {
+            logger.warn("Received $value Octo packets for unknown conference $conferenceId$suffix")
+        }
+    }
+
+    /**
+     * Handles each of the Octo packets in the batch in [buf]. Takes ownership
+     * of [buf].
+     */
+    private fun batchReceived(buf: ByteArray, off: Int, len: Int, receivedTime: Instant) {
+        stats.batchReceived()
+        val end = off + len
+        var entryOff = off + OCTO_HEADER_LENGTH
+        while (entryOff < end) {
+            val entryLen = if (end - entryOff >= BATCH_ENTRY_HEADER_LENGTH) {
+                OctoPacket.readBatchEntryLength(buf, entryOff)
+            } else {
+                -1
+            }
+            val packetOff = entryOff + BATCH_ENTRY_HEADER_LENGTH
+            if (entryLen < 0 || entryLen > end - packetOff || OctoPacket.isBatch(buf, packetOff, entryLen)) {
+                logger.warn("Invalid Octo batch, len=$len")
+                stats.invalidPacketReceived()
+                break
             }
+
+            // Each packet needs a buffer of its own, with room for the RTP
+            // stack around it.
+            val packetBuf = ByteBufferPool.getBuffer(
+                entryLen + RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET + Packet.BYTES_TO_LEAVE_AT_END_OF_PACKET
+            )
+            System.arraycopy(buf, packetOff, packetBuf, RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET, entryLen)
+            dispatch(packetBuf, RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET, entryLen, receivedTime)
+            entryOff = packetOff + entryLen
         }
+        ByteBufferPool.returnBuffer(buf)
     }
 
+    /**
+     * Sends a media packet to [targets]. Takes ownership of [buf], which must
+     * come from [ByteBufferPool].
+     */
     fun sendMediaData(
         buf: ByteArray,
         off: Int,
@@ -183,9 +360,18 @@ class BridgeOctoTransport(
     @Suppress("DEPRECATION")
     fun sendString(msg: String, targets: Collection<SocketAddress>, confId: Long) {
         val msgData = msg.toByteArray(StandardCharsets.UTF_8)
-        sendData(msgData, 0, msgData.size, targets, confId, MediaType.DATA, null)
+        // Leave room for the Octo header, so that sendData doesn't need to
+        // shift or copy again.
+        val buf = ByteBufferPool.getBuffer(msgData.size + OCTO_HEADER_LENGTH).apply {
+            System.arraycopy(msgData, 0, this, OCTO_HEADER_LENGTH, msgData.size)
+        }
+        sendData(buf, OCTO_HEADER_LENGTH, msgData.size, targets, confId, MediaType.DATA, null)
     }
 
+    /**
+     * Adds an Octo header to the packet in [buf] and sends it out. Takes
+     * ownership of [buf].
+     */
     private fun sendData(
         buf: ByteArray,
         off: Int,
@@ -216,6 +402,7 @@ class BridgeOctoTransport(
                 val newBuf = ByteBufferPool.getBuffer(octoPacketLength).apply {
                     System.arraycopy(buf, off, this, OCTO_HEADER_LENGTH, len)
                 }
+                ByteBufferPool.returnBuffer(buf)
                 Pair(newBuf, 0)
             }
         }
@@ -228,35 +415,64 @@ class BridgeOctoTransport(
         if (octoPacketLength > 1500) {
             stats.largePacketSent(mediaType)
         }
-        outgoingDataHandler?.sendData(newBuf, newOff, octoPacketLength, targets) ?: stats.noOutgoingHandler()
+        if (batcher != null) {
+            batcher.add(newBuf, newOff, octoPacketLength, targets)
+        } else {
+            sendOut(newBuf, newOff, octoPacketLength, targets)
+        }
+    }
+
+    /**
+     * Sends out a datagram. Takes ownership of [buf].
+     */
+    private fun sendOut(buf: ByteArray, off: Int, len: Int, targets: Collection<SocketAddress>) {
+        outgoingDataHandler?.sendData(buf, off, len, targets) ?: run {
+            stats.noOutgoingHandler()
+            ByteBufferPool.returnBuffer(buf)
+        }
     }
 
     fun getStatsJson(): OrderedJsonObject = OrderedJsonObject().apply {
         put("relay_id", relayId)
         putAll(getStats().toJson())
+        batcher?.let { put("batching", it.getStatsJson()) }
+        ingestShards?.let { put("ingest_shards", it.getStatsJson()) }
     }
 
     fun getStats(): StatsSnapshot = stats.toSnapshot()
 
+    /**
+     * Wraps the RTP/RTCP packet contained in the Octo packet in [buf] in an
+     * [OctoPacketInfo], without copying it.  [buf] must leave enough room
+     * before and after the packet for the RTP stack.
+     */
     private fun createPacketInfo(
-        sourceEpId: String,
+        sourceEpId: Long,
         buf: ByteArray,
         off: Int,
         len: Int,
         receivedTime: Instant
     ): OctoPacketInfo {
+        val rtpOff = off + OCTO_HEADER_LENGTH
         val rtpLen = len - OCTO_HEADER_LENGTH
-        val bufCopy = ByteBufferPool.getBuffer(
-            rtpLen + RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET + Packet.BYTES_TO_LEAVE_AT_END_OF_PACKET
-        ).apply {
-            System.arraycopy(
-                buf, off + OCTO_HEADER_LENGTH,
-                this, RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET,
-                rtpLen
-            )
+        val packetBuf = if (rtpOff >= RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET &&
+            buf.size - rtpOff - rtpLen >= Packet.BYTES_TO_LEAVE_AT_END_OF_PACKET
+        ) {
+            buf
+        } else {
+            // This shouldn't happen with buffers coming from UdpTransport, but
+            // fall back to a copy rather than break the RTP stack.
+            stats.packetCopied()
+            ByteBufferPool.getBuffer(
+                rtpLen + RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET + Packet.BYTES_TO_LEAVE_AT_END_OF_PACKET
+            ).also {
+                System.arraycopy(buf, rtpOff, it, RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET, rtpLen)
+                ByteBufferPool.returnBuffer(buf)
+            }
         }
-        return OctoPacketInfo(UnparsedPacket(bufCopy, RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET, rtpLen)).apply {
-            this.endpointId = sourceEpId
+        val packetOff = if (packetBuf === buf) rtpOff else RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET
+        return OctoPacketInfo(UnparsedPacket(packetBuf, packetOff, rtpLen)).apply {
+            this.octoEndpointId = sourceEpId
             this.receivedTime = receivedTime.toEpochMilli()
         }
     }
@@ -271,10 +487,27 @@ class BridgeOctoTransport(
         }
     }
 
+    companion object {
+        /**
+         * The maximum number of unknown conference IDs for which we count
+         * the received packets.
+         */
+        private const val MAX_UNKNOWN_CONFERENCES = 1000
+
+        /**
+         * The maximum number of warnings about packets for unknown
+         * conferences logged per second. The packets are still counted.
+         */
+        private const val MAX_UNKNOWN_CONFERENCE_WARNINGS_PER_SECOND = 10
+    }
+
     private class Stats(val logger: Logger) {
         private val numInvalidPackets = LongAdder()
         private val numIncomingDroppedNoHandler = LongAdder()
         private val numOutgoingDroppedNoHandler = LongAdder()
+        private val numIncomingPacketsCopied = LongAdder()
+        private val numBatchesReceived = LongAdder()
+        private val numIngestRejected = LongAdder()
         private val largePacketsSent = HashMap<MediaType, AtomicLong>()
 
         fun invalidPacketReceived() {
@@ -289,6 +522,18 @@ class BridgeOctoTransport(
             numOutgoingDroppedNoHandler.increment()
         }
 
+        fun packetCopied() {
+            numIncomingPacketsCopied.increment()
+        }
+
+        fun batchReceived() {
+            numBatchesReceived.increment()
+        }
+
+        fun ingestRejected() {
+            numIngestRejected.increment()
+        }
+
         fun largePacketSent(mediaType: MediaType) {
             val value = largePacketsSent.computeIfAbsent(mediaType) { AtomicLong() }.incrementAndGet()
             if (value == 1L || value % 1000 == 0L) {
@@ -300,6 +545,9 @@ class BridgeOctoTransport(
             numInvalidPackets = numInvalidPackets.sum(),
             numIncomingDroppedNoHandler = numIncomingDroppedNoHandler.sum(),
             numOutgoingDroppedNoHandler = numOutgoingDroppedNoHandler.sum(),
+            numIncomingPacketsCopied = numIncomingPacketsCopied.sum(),
+            numBatchesReceived = numBatchesReceived.sum(),
+            numIngestRejected = numIngestRejected.sum(),
             numLargeAudioPacketsSent = largePacketsSent[MediaType.AUDIO]?.get() ?: 0,
             numLargeVideoPacketsSent = largePacketsSent[MediaType.VIDEO]?.get() ?: 0,
             numLargeDataPacketsSent = largePacketsSent[MediaType.DATA]?.get() ?: 0
@@ -310,6 +558,9 @@ class BridgeOctoTransport(
         val numInvalidPackets: Long,
         val numIncomingDroppedNoHandler: Long,
         val numOutgoingDroppedNoHandler: Long,
+        val numIncomingPacketsCopied: Long,
+        val numBatchesReceived: Long,
+        val numIngestRejected: Long,
         val numLargeAudioPacketsSent: Long,
         val numLargeVideoPacketsSent: Long,
         val numLargeDataPacketsSent: Long
@@ -318,6 +569,9 @@ class BridgeOctoTransport(
             put("num_invalid_packets_rx", numInvalidPackets)
             put("num_incoming_packets_dropped_no_handler", numIncomingDroppedNoHandler)
             put("num_outgoing_packets_dropped_no_handler", numOutgoingDroppedNoHandler)
+            put("num_incoming_packets_copied", numIncomingPacketsCopied)
+            put("num_batches_received", numBatchesReceived)
+            put("num_incoming_packets_rejected_by_ingest", numIngestRejected)
             put("num_large_audio_packets_sent", numLargeAudioPacketsSent)
             put("num_large_video_packets_sent", numLargeVideoPacketsSent)
             put("num_large_data_packets_sent", numLargeDataPacketsSent)
@@ -330,7 +584,10 @@ class BridgeOctoTransport(
     interface IncomingOctoPacketHandler {
         /**
          * Notify that an Octo media packet has been received.  The handler
-         * *does* own the packet buffer inside the [OctoPacketInfo]
+         * *does* own the packet buffer inside the [OctoPacketInfo].  The ID
+         * of the source endpoint is only set in its numeric form
+         * ([OctoPacketInfo.octoEndpointId]), to avoid creating a string for
+         * every packet.
          */
         fun handleMediaPacket(packetInfo: OctoPacketInfo)
 
@@ -342,6 +599,10 @@ class BridgeOctoTransport(
     }
 
     interface OutgoingOctoPacketHandler {
+        /**
+         * Send out the Octo packet in [data] to [remoteAddresses]. The handler
+         * takes ownership of [data], which comes from [ByteBufferPool].
+         */
         fun sendData(data: ByteArray, off: Int, length: Int, remoteAddresses: Collection<SocketAddress>)
     }
 }
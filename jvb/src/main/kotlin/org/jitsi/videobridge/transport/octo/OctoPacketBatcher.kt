@@ -0,0 +1,214 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.transport.octo
+
+import org.jitsi.nlj.util.OrderedJsonObject
+import org.jitsi.videobridge.octo.OctoPacket
+import org.jitsi.videobridge.octo.OctoPacket.BATCH_ENTRY_HEADER_LENGTH
+import org.jitsi.videobridge.octo.OctoPacket.OCTO_HEADER_LENGTH
+import org.jitsi.videobridge.util.ByteBufferPool
+import java.net.SocketAddress
+import java.time.Duration
+import java.util.ArrayDeque
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Packs the Octo packets going to the same remote bridge into batches of up
+ * to [maxSize] bytes, which are sent as a single datagram (see [OctoPacket]).
+ * A batch is sent when the next packet doesn't fit in it, or [maxDelay]
+ * after its first packet was added, whichever comes first.
+ *
+ * [send] is called to send out a batch (or a single packet) and takes
+ * ownership of the buffer, which comes from [ByteBufferPool].
+ */
+class OctoPacketBatcher(
+    private val maxSize: Int,
+    private val maxDelay: Duration,
+    private val scheduler: ScheduledExecutorService,
+    private val send: (buf: ByteArray, off: Int, len: Int, targets: Collection<SocketAddress>) -> Unit
+) {
+    init {
+        require(maxSize > OCTO_HEADER_LENGTH + BATCH_ENTRY_HEADER_LENGTH) { "Invalid max batch size: $maxSize" }
+    }
+
+    private val batches: MutableMap<SocketAddress, Batch> = ConcurrentHashMap()
+
+    private val numBatchesSent = LongAdder()
+    private val numPacketsBatched = LongAdder()
+    private val numPacketsNotBatched = LongAdder()
+
+    /**
+     * Adds the Octo packet in [buf] to the batches for [targets]. Takes
+     * ownership of [buf], which must come from [ByteBufferPool].
+     */
+    fun add(buf: ByteArray, off: Int, len: Int, targets: Collection<SocketAddress>) {
+        if (OCTO_HEADER_LENGTH + BATCH_ENTRY_HEADER_LENGTH + len > maxSize) {
+            // Too large to be batched. Send the pending packets first, to
+            // preserve the order.
+            targets.forEach { batches[it]?.flush() }
+            numPacketsNotBatched.increment()
+            send(buf, off, len, targets)
+            return
+        }
+
+        targets.forEach { target ->
+            batches.computeIfAbsent(target) { Batch(it) }.add(buf, off, len)
+        }
+        ByteBufferPool.returnBuffer(buf)
+    }
+
+    /**
+     * Sends all pending batches.
+     */
+    fun flush() = batches.values.forEach { it.flush() }
+
+    /**
+     * Sends the pending batch for [target] (if any), and forgets about it,
+     * e.g. because the remote bridge is no longer used.
+     */
+    fun removeTarget(target: SocketAddress) {
+        batches.remove(target)?.flush()
+    }
+
+    fun getStatsJson(): OrderedJsonObject = OrderedJsonObject().apply {
+        put("num_batches_sent", numBatchesSent.sum())
+        put("num_packets_batched", numPacketsBatched.sum())
+        put("num_packets_not_batched", numPacketsNotBatched.sum())
+    }
+
+    private inner class Batch(target: SocketAddress) {
+        private val targets = listOf(target)
+
+        private var buf: ByteArray? = null
+        private var length = 0
+        private var numPackets = 0
+
+        /**
+         * Incremented every time the batch is sent, so that a scheduled flush
+         * does not send a later batch before its time.
+         */
+        private var generation = 0L
+
+        /**
+         * The batches which have been taken, in the order in which they were
+         * taken, waiting to be sent. Synchronized on this batch.
+         */
+        private val ready = ArrayDeque<Pending>()
+
+        /**
+         * Held while sending, so that batches taken by different threads are
+         * sent in order.
+         */
+        private val sendLock = Any()
+
+        fun add(packet: ByteArray, off: Int, len: Int) {
+            var full = false
+            var scheduledGeneration = -1L
+            synchronized(this) {
+                if (buf != null && length + BATCH_ENTRY_HEADER_LENGTH + len > maxSize) {
+                    take()
+                    full = true
+                }
+                val buf = this.buf ?: ByteBufferPool.getBuffer(maxSize).also {
+                    OctoPacket.writeBatchHeader(it, 0)
+                    this.buf = it
+                    length = OCTO_HEADER_LENGTH
+                    scheduledGeneration = generation
+                }
+
+                OctoPacket.writeBatchEntryLength(buf, length, len)
+                System.arraycopy(packet, off, buf, length + BATCH_ENTRY_HEADER_LENGTH, len)
+                length += BATCH_ENTRY_HEADER_LENGTH + len
+                numPackets++
+            }
+
+            // Send and schedule without holding the lock, so that a slow
+            // socket doesn't hold up other threads adding packets.
+            if (full) {
+                sendReady()
+            }
+            if (scheduledGeneration >= 0) {
+                scheduler.schedule(Runnable { flush(scheduledGeneration) }, maxDelay.toNanos(), TimeUnit.NANOSECONDS)
+            }
+        }
+
+        /**
+         * Sends the pending packets, and returns once all batches taken
+         * before have been sent.
+         */
+        fun flush() {
+            synchronized(this) {
+                if (buf != null) {
+                    take()
+                }
+            }
+            sendReady()
+        }
+
+        private fun flush(scheduledGeneration: Long) {
+            val taken = synchronized(this) {
+                (buf != null && generation == scheduledGeneration).also { if (it) take() }
+            }
+            if (taken) {
+                sendReady()
+            }
+        }
+
+        /**
+         * Moves the pending packets of this batch to [ready]. Must be called
+         * while synchronized on this batch.
+         */
+        private fun take() {
+            ready.addLast(Pending(buf!!, length, numPackets))
+            buf = null
+            length = 0
+            numPackets = 0
+            generation++
+        }
+
+        /**
+         * Sends the batches in [ready] in order. A thread which finds another
+         * one sending waits for it, and then sends what is left (if anything).
+         */
+        private fun sendReady() {
+            synchronized(sendLock) {
+                while (true) {
+                    val pending = synchronized(this) { ready.pollFirst() } ?: return
+                    sendPending(pending)
+                }
+            }
+        }
+
+        private fun sendPending(pending: Pending) {
+            if (pending.numPackets == 1) {
+                // Don't pay for the batch header if there's nothing to batch.
+                val off = OCTO_HEADER_LENGTH + BATCH_ENTRY_HEADER_LENGTH
+                numPacketsNotBatched.increment()
+                send(pending.buf, off, pending.length - off, targets)
+            } else {
+                numBatchesSent.increment()
+                numPacketsBatched.add(pending.numPackets.toLong())
+                send(pending.buf, 0, pending.length, targets)
+            }
+        }
+    }
+
+    private class Pending(val buf: ByteArray, val length: Int, val numPackets: Int)
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.transport.udp
+
+import java.time.Instant
+
+/**
+ * A batch of up to [capacity] datagrams which were received in a single
+ * wakeup of a reader thread.  Each datagram is held in its own buffer
+ * (usually one obtained from [org.jitsi.videobridge.util.ByteBufferPool])
+ * at [offsets] with [lengths].
+ *
+ * A [DatagramBatch] instance is owned by the reader thread and is reused for
+ * every wakeup, so handlers must not keep a reference to it after the call
+ * in which it was passed to them returns.  The buffers in it, on the other
+ * hand, are handed over to the handler.
+ */
+class DatagramBatch(val capacity: Int) {
+    init {
+        require(capacity > 0) { "Invalid batch capacity: $capacity" }
+    }
+
+    val buffers: Array<ByteArray?> = arrayOfNulls(capacity)
+    val offsets = IntArray(capacity)
+    val lengths = IntArray(capacity)
+
+    /**
+     * The number of datagrams currently in the batch.
+     */
+    var size = 0
+        private set
+
+    /**
+     * The time at which the datagrams in this batch were received.
+     */
+    var receivedTime: Instant = Instant.EPOCH
+
+    fun isFull(): Boolean = size == capacity
+
+    fun add(buf: ByteArray, off: Int, len: Int) {
+        if (isFull()) {
+            throw IllegalStateException("Batch is full")
+        }
+        buffers[size] = buf
+        offsets[size] = off
+        lengths[size] = len
+        size++
+    }
+
+    /**
+     * Removes all datagrams from the batch.  Does not return the buffers to
+     * the pool, this is the responsibility of whoever owns them.
+     */
+    fun clear() {
+        buffers.fill(null, 0, size)
+        size = 0
+    }
+
+    inline fun forEach(action: (buf: ByteArray, off: Int, len: Int) -> Unit) {
+        for (i in 0 until size) {
+            action(buffers[i]!!, offsets[i], lengths[i])
+        }
+    }
+}
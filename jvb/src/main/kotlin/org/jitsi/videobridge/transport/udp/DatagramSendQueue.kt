@@ -0,0 +1,149 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.transport.udp
+
+import java.net.SocketAddress
+import java.nio.ByteBuffer
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * A bounded queue of datagrams waiting to be sent by a single sender thread.
+ * Any thread can add a datagram with [offer]. The sender thread takes
+ * *everything* that has been queued at once with [take], which swaps the
+ * filled [Slots] for an empty one, so the lock is taken once per flush
+ * rather than once per datagram.
+ *
+ * The queue is backed by pre-allocated arrays, so queueing a datagram does
+ * not allocate. A datagram is held either in a heap buffer, or in a
+ * [ByteBuffer] (from the pool of direct buffers).
+ */
+internal class DatagramSendQueue(val capacity: Int) {
+    init {
+        require(capacity > 0) { "Invalid queue capacity: $capacity" }
+    }
+
+    private val lock = ReentrantLock()
+    private val notEmpty = lock.newCondition()
+
+    private var pending = Slots(capacity)
+
+    private var closed = false
+
+    /**
+     * Adds a datagram to the queue.
+     *
+     * @return true if the datagram was queued (in which case the queue now
+     * owns [buf]), or false if the queue is full or closed (in which case the
+     * caller still owns [buf]).
+     */
+    fun offer(buf: ByteArray, off: Int, len: Int, targets: Collection<SocketAddress>): Boolean = lock.withLock {
+        if (closed || pending.size == capacity) {
+            return false
+        }
+        pending.add(buf, off, len, targets)
+        if (pending.size == 1) {
+            notEmpty.signal()
+        }
+        return true
+    }
+
+    /**
+     * Adds a datagram held in [buf] (between its start and its limit) to the
+     * queue, with the same semantics as the other [offer].
+     */
+    fun offer(buf: ByteBuffer, targets: Collection<SocketAddress>): Boolean = lock.withLock {
+        if (closed || pending.size == capacity) {
+            return false
+        }
+        pending.add(buf, targets)
+        if (pending.size == 1) {
+            notEmpty.signal()
+        }
+        return true
+    }
+
+    /**
+     * Waits until at least one datagram is queued, and then takes all queued
+     * datagrams. [spare] must be empty, and is used to hold the datagrams
+     * queued from now on.
+     *
+     * @return the queued datagrams, or null if the queue was closed and there
+     * is nothing left in it.
+     */
+    fun take(spare: Slots): Slots? = lock.withLock {
+        while (pending.size == 0) {
+            if (closed) {
+                return null
+            }
+            notEmpty.await()
+        }
+        val full = pending
+        pending = spare
+        return full
+    }
+
+    /**
+     * The number of datagrams currently queued.
+     */
+    fun size(): Int = lock.withLock { pending.size }
+
+    /**
+     * Closes the queue. Datagrams which were already queued can still be
+     * taken, but no new ones will be accepted.
+     */
+    fun close() = lock.withLock {
+        closed = true
+        notEmpty.signalAll()
+    }
+
+    /**
+     * Each datagram is either in [buffers] (at [offsets] with [lengths]) or
+     * in [byteBuffers].
+     */
+    class Slots(capacity: Int) {
+        val buffers: Array<ByteArray?> = arrayOfNulls(capacity)
+        val byteBuffers: Array<ByteBuffer?> = arrayOfNulls(capacity)
+        val offsets = IntArray(capacity)
+        val lengths = IntArray(capacity)
+        val targets: Array<Collection<SocketAddress>?> = arrayOfNulls(capacity)
+
+        var size = 0
+            private set
+
+        fun add(buf: ByteArray, off: Int, len: Int, targets: Collection<SocketAddress>) {
+            buffers[size] = buf
+            offsets[size] = off
+            lengths[size] = len
+            this.targets[size] = targets
+            size++
+        }
+
+        fun add(buf: ByteBuffer, targets: Collection<SocketAddress>) {
+            byteBuffers[size] = buf
+            this.targets[size] = targets
+            size++
+        }
+
+        fun clear() {
+            buffers.fill(null, 0, size)
+            byteBuffers.fill(null, 0, size)
+            targets.fill(null, 0, size)
+            size = 0
+        }
+    }
+}
@@ -19,10 +19,13 @@ package org.jitsi.videobridge.transport.udp
 import org.jitsi.nlj.util.BitrateTracker
 import org.jitsi.nlj.util.OrderedJsonObject
 import org.jitsi.nlj.util.bytes
+import org.jitsi.rtp.Packet
+import org.jitsi.rtp.rtp.RtpPacket
 import org.jitsi.utils.logging2.Logger
 import org.jitsi.utils.logging2.createChildLogger
 import org.jitsi.utils.secs
 import org.jitsi.utils.stats.RateTracker
+import org.jitsi.videobridge.util.ByteBufferPool
 import java.io.IOException
 import java.net.DatagramPacket
 import java.net.DatagramSocket
@@ -31,9 +34,16 @@ import java.net.InetSocketAddress
 import java.net.SocketAddress
 import java.net.SocketException
 import java.net.UnknownHostException
+import java.nio.ByteBuffer
+import java.nio.channels.ClosedChannelException
+import java.nio.channels.ClosedSelectorException
+import java.nio.channels.DatagramChannel
+import java.nio.channels.SelectionKey
+import java.nio.channels.Selector
 import java.time.Clock
 import java.time.Instant
 import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
 import java.util.concurrent.atomic.LongAdder
 
 /**
@@ -42,6 +52,24 @@ import java.util.concurrent.atomic.LongAdder
  * packets there via [startReadingData] until the transport is stopped. Sending
  * can be done via [send], and a remote address (or a set of remote addresses)
  * must be provided.
+ *
+ * When [receiveBatchSize] is larger than 1 the socket is read in non-blocking
+ * mode: every time the reader thread wakes up it drains up to
+ * [receiveBatchSize] datagrams into pooled buffers and passes them to the
+ * [IncomingDataHandler] as a single [DatagramBatch]. Since the same channel
+ * is used for sending, sends in this mode do not block either: a datagram
+ * which does not fit in the socket's send buffer is dropped (and counted
+ * separately as `send_buffer_full_drops`) instead of waiting for room, as it
+ * would with a blocking socket.
+ *
+ * When [sendQueueSize] is larger than 0, datagrams passed to [enqueue] are
+ * put in a queue and sent out in batches by a sender thread (see
+ * [startSendingData]) instead of on the caller's thread.
+ *
+ * When the pool of direct buffers in [ByteBufferPool] is enabled, datagrams
+ * are read into buffers from it (and copied into the heap buffers passed to
+ * the [IncomingDataHandler]), and queued datagrams wait in buffers from it
+ * instead of in their heap buffers.
  */
 class UdpTransport @JvmOverloads @Throws(SocketException::class, UnknownHostException::class) constructor(
     private val bindAddress: String,
@@ -49,6 +77,8 @@ class UdpTransport @JvmOverloads @Throws(SocketException::class, UnknownHostExce
     parentLogger: Logger,
     soRcvBuf: Int? = null,
     soSndBuf: Int? = null,
+    private val receiveBatchSize: Int = 1,
+    sendQueueSize: Int = 0,
     private val clock: Clock = Clock.systemUTC()
 ) {
     private val logger = createChildLogger(
@@ -61,19 +91,44 @@ class UdpTransport @JvmOverloads @Throws(SocketException::class, UnknownHostExce
 
     private val running = AtomicBoolean(true)
 
-    private val socket: DatagramSocket = DatagramSocket(
-        InetSocketAddress(InetAddress.getByName(bindAddress), bindPort)
-    ).apply {
+    private val channel: DatagramChannel = DatagramChannel.open().apply {
+        try {
+            bind(InetSocketAddress(InetAddress.getByName(bindAddress), bindPort))
+        } catch (e: IOException) {
+            close()
+            throw SocketException("Failed to bind to $bindAddress:$bindPort: ${e.message}")
+        }
+        // In batch mode the channel is only ever used in non-blocking mode
+        // (for both reading and sending), so set it once here rather than
+        // racing with senders later.
+        configureBlocking(receiveBatchSize <= 1)
+    }
+
+    private val socket: DatagramSocket = channel.socket().apply {
         soRcvBuf?.let { receiveBufferSize = it }
         soSndBuf?.let { sendBufferSize = it }
     }.also { socket ->
         logger.info(
             "Initialized with bind address $bindAddress and bind port $bindPort. " +
                 "Receive buffer size ${socket.receiveBufferSize}${soRcvBuf?.let { " (asked for $it)"} ?: ""}. " +
-                "Send buffer size ${socket.sendBufferSize}${soSndBuf?.let { " (asked for $it)"} ?: ""}."
+                "Send buffer size ${socket.sendBufferSize}${soSndBuf?.let { " (asked for $it)"} ?: ""}. " +
+                "Receive batch size $receiveBatchSize."
         )
     }
 
+    /**
+     * The selector used by the reader thread when reading in batches, so that
+     * [stop] can wake it up.
+     */
+    @Volatile
+    private var selector: Selector? = null
+
+    /**
+     * The queue of datagrams waiting for the sender thread, or null if
+     * datagrams are sent on the caller's thread.
+     */
+    private val sendQueue: DatagramSendQueue? = if (sendQueueSize > 0) DatagramSendQueue(sendQueueSize) else null
+
     private val stats = Stats()
 
     var incomingDataHandler: IncomingDataHandler? = null
@@ -83,23 +138,185 @@ class UdpTransport @JvmOverloads @Throws(SocketException::class, UnknownHostExce
      * is passed to the set [IncomingDataHandler].
      */
     fun startReadingData() {
-        val buf = ByteArray(1500)
-        val packet = DatagramPacket(buf, 0, 1500)
+        if (receiveBatchSize > 1) {
+            readBatches()
+        } else {
+            readSingle()
+        }
+    }
+
+    private fun readSingle() {
+        val packet = DatagramPacket(EMPTY_BUFFER, 0, 0)
+        val useDirectBuffers = ByteBufferPool.directBuffersEnabled()
         while (running.get()) {
-            // TODO: needed?
-            packet.setData(buf, 0, 1500)
-            try {
-                socket.receive(packet)
+            val buf = ByteBufferPool.getBuffer(RECEIVE_ALLOCATION_SIZE)
+            val length = try {
+                if (useDirectBuffers) {
+                    // The channel is blocking, so this waits for a datagram.
+                    receive(null, buf)
+                } else {
+                    packet.setData(buf, BYTES_TO_LEAVE_AT_START, buf.receiveCapacity())
+                    socket.receive(packet)
+                    packet.length
+                }
             } catch (sce: SocketException) {
                 logger.info("Socket closed, stopping reader")
+                ByteBufferPool.returnBuffer(buf)
+                break
+            } catch (e: ClosedChannelException) {
+                logger.info("Socket closed, stopping reader")
+                ByteBufferPool.returnBuffer(buf)
                 break
             } catch (e: IOException) {
                 logger.warn("Exception while reading ", e)
+                ByteBufferPool.returnBuffer(buf)
+                continue
+            }
+            val now = clock.instant()
+            stats.packetReceived(length, now)
+            incomingDataHandler?.dataReceived(buf, BYTES_TO_LEAVE_AT_START, length, now) ?: run {
+                stats.incomingPacketDropped()
+                ByteBufferPool.returnBuffer(buf)
+            }
+        }
+    }
+
+    /**
+     * Wait for the socket to become readable, and then drain as many datagrams
+     * as are available (up to [receiveBatchSize]) before handing them off to
+     * the [IncomingDataHandler], so that the per-wakeup cost is amortized
+     * over the whole batch.
+     */
+    private fun readBatches() {
+        val batch = DatagramBatch(receiveBatchSize)
+        val selector = try {
+            Selector.open().also { channel.register(it, SelectionKey.OP_READ) }
+        } catch (e: IOException) {
+            logger.error("Failed to set up the socket for batched reading, stopping reader", e)
+            return
+        }
+        this.selector = selector
+        // Unless the pool of direct buffers is enabled, receive into a buffer
+        // of direct memory which this thread keeps for as long as it reads
+        // (the JDK would otherwise do the same through a temporary direct
+        // buffer of its own).
+        val directBuffer =
+            if (ByteBufferPool.directBuffersEnabled()) null else ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE)
+
+        try {
+            while (running.get()) {
+                selector.select()
+                selector.selectedKeys().clear()
+
+                batch.receivedTime = clock.instant()
+                while (!batch.isFull()) {
+                    val buf = ByteBufferPool.getBuffer(RECEIVE_ALLOCATION_SIZE)
+                    val length = receive(directBuffer, buf)
+                    if (length < 0) {
+                        ByteBufferPool.returnBuffer(buf)
+                        break
+                    }
+                    stats.packetReceived(length, batch.receivedTime)
+                    batch.add(buf, BYTES_TO_LEAVE_AT_START, length)
+                }
+                if (batch.size > 0) {
+                    stats.batchReceived()
+                    dispatch(batch)
+                }
+            }
+        } catch (e: ClosedChannelException) {
+            logger.info("Socket closed, stopping reader")
+        } catch (e: ClosedSelectorException) {
+            logger.info("Selector closed, stopping reader")
+        } catch (e: IOException) {
+            logger.warn("Exception while reading, stopping reader", e)
+        } finally {
+            // Any buffers still in the batch were not handed off.
+            batch.forEach { buf, _, _ -> ByteBufferPool.returnBuffer(buf) }
+            batch.clear()
+            this.selector = null
+            selector.close()
+        }
+    }
+
+    /**
+     * Receives a datagram from the channel into [readBuffer], or into a
+     * buffer from the pool of direct buffers if it is null, and copies it
+     * into [buf], leaving the reserved room at its start and end.
+     *
+     * @return the length of the datagram, or -1 if none was available (only
+     * when the channel is non-blocking).
+     */
+    private fun receive(readBuffer: ByteBuffer?, buf: ByteArray): Int {
+        val directBuffer = readBuffer ?: ByteBufferPool.getDirectBuffer()
+        try {
+            directBuffer.clear()
+            directBuffer.limit(minOf(directBuffer.capacity(), buf.receiveCapacity()))
+            if (channel.receive(directBuffer) == null) {
+                return -1
+            }
+            directBuffer.flip()
+            val length = directBuffer.remaining()
+            directBuffer.get(buf, BYTES_TO_LEAVE_AT_START, length)
+            return length
+        } finally {
+            if (readBuffer == null) {
+                ByteBufferPool.returnDirectBuffer(directBuffer)
+            }
+        }
+    }
+
+    private fun dispatch(batch: DatagramBatch) {
+        val handler = incomingDataHandler
+        if (handler == null) {
+            batch.forEach { buf, _, _ ->
+                stats.incomingPacketDropped()
+                ByteBufferPool.returnBuffer(buf)
             }
+            batch.clear()
+        } else {
+            try {
+                handler.dataReceived(batch)
+            } finally {
+                // The handler owns the buffers now, even if it failed.
+                batch.clear()
+            }
+        }
+    }
+
+    /**
+     * Send the datagrams queued via [enqueue] for as long as this transport is
+     * still running. Does nothing if this transport has no send queue.
+     */
+    fun startSendingData() {
+        val queue = sendQueue ?: return
+        val sender = Sender()
+        var spare = DatagramSendQueue.Slots(queue.capacity)
+        while (true) {
+            val slots = try {
+                queue.take(spare)
+            } catch (e: InterruptedException) {
+                logger.warn("Interrupted, stopping sender")
+                break
+            } ?: break
+
+            stats.sendQueueFlushed(slots.size)
             val now = clock.instant()
-            stats.packetReceived(packet.length, now)
-            incomingDataHandler?.dataReceived(buf, packet.offset, packet.length, now) ?: stats.incomingPacketDropped()
+            for (i in 0 until slots.size) {
+                val byteBuffer = slots.byteBuffers[i]
+                if (byteBuffer != null) {
+                    slots.targets[i]!!.forEach { sender.send(byteBuffer, it, now) }
+                    ByteBufferPool.returnDirectBuffer(byteBuffer)
+                } else {
+                    val buf = slots.buffers[i]!!
+                    slots.targets[i]!!.forEach { sender.send(buf, slots.offsets[i], slots.lengths[i], it, now) }
+                    ByteBufferPool.returnBuffer(buf)
+                }
+            }
+            slots.clear()
+            spare = slots
         }
+        logger.info("Send queue closed, stopped sending")
     }
 
     /**
@@ -112,7 +329,18 @@ class UdpTransport @JvmOverloads @Throws(SocketException::class, UnknownHostExce
             return
         }
         try {
-            socket.send(DatagramPacket(data, off, length, remoteAddress).apply { socketAddress = remoteAddress })
+            if (receiveBatchSize > 1) {
+                // The channel is in non-blocking mode, so we can't use the
+                // socket adaptor to send.
+                if (channel.send(ByteBuffer.wrap(data, off, length), remoteAddress) == 0) {
+                    // The socket's send buffer is full, and the channel is non-blocking.
+                    stats.outgoingPacketDropped()
+                    stats.sendBufferFull()
+                    return
+                }
+            } else {
+                socket.send(DatagramPacket(data, off, length, remoteAddress).apply { socketAddress = remoteAddress })
+            }
             stats.packetSent(length, clock.instant())
         } catch (t: Throwable) {
             logger.warn("Error sending data", t)
@@ -127,17 +355,139 @@ class UdpTransport @JvmOverloads @Throws(SocketException::class, UnknownHostExce
         remoteAddresses.forEach { send(data, off, length, it) }
     }
 
+    /**
+     * Send data out via this transport to [remoteAddresses], using the send
+     * queue if there is one. *Does* take ownership of the given buffer, which
+     * must come from [ByteBufferPool] and will be returned to it once the
+     * data has been sent (or dropped). [remoteAddresses] must not be
+     * modified afterwards.
+     *
+     * When the pool of direct buffers is enabled, the data is copied into a
+     * direct buffer to wait in the queue, and [data] is returned right away.
+     */
+    fun enqueue(data: ByteArray, off: Int, length: Int, remoteAddresses: Collection<SocketAddress>) {
+        val queue = sendQueue
+        if (queue == null) {
+            send(data, off, length, remoteAddresses)
+            ByteBufferPool.returnBuffer(data)
+            return
+        }
+        if (!running.get()) {
+            stats.outgoingPacketDropped()
+            ByteBufferPool.returnBuffer(data)
+            return
+        }
+
+        val queued = if (ByteBufferPool.directBuffersEnabled() && length <= ByteBufferPool.getDirectBufferSize()) {
+            val byteBuffer = ByteBufferPool.getDirectBuffer()
+            byteBuffer.put(data, off, length)
+            byteBuffer.flip()
+            ByteBufferPool.returnBuffer(data)
+            queue.offer(byteBuffer, remoteAddresses).also {
+                if (!it) {
+                    ByteBufferPool.returnDirectBuffer(byteBuffer)
+                }
+            }
+        } else {
+            queue.offer(data, off, length, remoteAddresses).also {
+                if (!it) {
+                    ByteBufferPool.returnBuffer(data)
+                }
+            }
+        }
+        if (!queued) {
+            stats.outgoingPacketDropped()
+            // [stop] clears [running] before it closes the queue, so a datagram
+            // dropped because the transport is stopping is not counted as
+            // backpressure.
+            if (running.get()) {
+                stats.sendQueueFull()
+            }
+        }
+    }
+
     /**
      * Stop this transport.  It will stop receiving from the socket (and close
      * it) and will no longer send data
      */
     fun stop() {
         if (running.compareAndSet(true, false)) {
-            socket.close()
+            sendQueue?.close()
+            channel.close()
+            selector?.wakeup()
         }
     }
 
-    fun getStats(): StatsSnapshot = stats.toSnapshot()
+    fun getStats(): StatsSnapshot = stats.toSnapshot(sendQueue?.size() ?: 0)
+
+    fun getStatsJson(): OrderedJsonObject = stats.toJson(sendQueue?.size() ?: 0)
+
+    /**
+     * Sends datagrams from the sender thread without allocating per datagram:
+     * a blocking socket is given a reused [DatagramPacket], and a
+     * non-blocking channel is given a reused direct [ByteBuffer] (which the
+     * JDK would otherwise copy heap buffers into anyway). Datagrams which
+     * were queued in a [ByteBuffer] are given to the channel as they are.
+     */
+    private inner class Sender {
+        private val packet = DatagramPacket(EMPTY_BUFFER, 0, 0)
+        private val directBuffer: ByteBuffer? =
+            if (receiveBatchSize > 1) ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE) else null
+
+        fun send(data: ByteArray, off: Int, length: Int, remoteAddress: SocketAddress, now: Instant) {
+            try {
+                if (directBuffer != null) {
+                    val byteBuffer = if (length <= directBuffer.capacity()) {
+                        directBuffer.clear()
+                        directBuffer.put(data, off, length)
+                        directBuffer.flip()
+                        directBuffer
+                    } else {
+                        ByteBuffer.wrap(data, off, length)
+                    }
+                    if (channel.send(byteBuffer, remoteAddress) == 0) {
+                        // The socket's send buffer is full, and the channel is non-blocking.
+                        stats.outgoingPacketDropped()
+                        stats.sendBufferFull()
+                        return
+                    }
+                } else {
+                    packet.setData(data, off, length)
+                    packet.socketAddress = remoteAddress
+                    socket.send(packet)
+                }
+                stats.packetSent(length, now)
+            } catch (t: Throwable) {
+                stats.outgoingPacketDropped()
+                if (running.get()) {
+                    logger.warn("Error sending data", t)
+                }
+            }
+        }
+
+        /**
+         * Sends the datagram between the start and the limit of [buf]. Does not
+         * take ownership of [buf], which may be sent to other addresses after.
+         */
+        fun send(buf: ByteBuffer, remoteAddress: SocketAddress, now: Instant) {
+            try {
+                buf.position(0)
+                val length = buf.remaining()
+                if (channel.send(buf, remoteAddress) == 0) {
+                    // The socket's send buffer is full, and the channel is non-blocking.
+                    stats.outgoingPacketDropped()
+                    stats.sendBufferFull()
+                    return
+                }
+                stats.packetSent(length, now)
+            } catch (t: Throwable) {
+                stats.outgoingPacketDropped()
+                if (running.get()) {
+                    logger.warn("Error sending data", t)
+                }
+            }
+        }
+    }
 
     class Stats {
         private val packetsReceived = LongAdder()
@@ -146,6 +496,12 @@ class UdpTransport @JvmOverloads @Throws(SocketException::class, UnknownHostExce
         private val packetsSent = LongAdder()
         private val bytesSent = LongAdder()
         private val outgoingPacketsDropped = LongAdder()
+        private val batchesReceived = LongAdder()
+        private val sendQueueFlushes = LongAdder()
+        private val packetsFlushed = LongAdder()
+        private val sendQueueFullDrops = LongAdder()
+        private val sendBufferFullDrops = LongAdder()
+        private val maxFlushSize = AtomicInteger()
         private val receivePacketRate: RateTracker = RateTracker(RATE_INTERVAL, RATE_BUCKET_SIZE)
         private val receiveBitRate: BitrateTracker = BitrateTracker(RATE_INTERVAL, RATE_BUCKET_SIZE)
         private val sendPacketRate: RateTracker = RateTracker(RATE_INTERVAL, RATE_BUCKET_SIZE)
@@ -169,6 +525,24 @@ class UdpTransport @JvmOverloads @Throws(SocketException::class, UnknownHostExce
             }
         }
 
+        fun batchReceived() {
+            batchesReceived.increment()
+        }
+
+        fun sendQueueFlushed(numPackets: Int) {
+            sendQueueFlushes.increment()
+            packetsFlushed.add(numPackets.toLong())
+            maxFlushSize.accumulateAndGet(numPackets) { a, b -> maxOf(a, b) }
+        }
+
+        fun sendQueueFull() {
+            sendQueueFullDrops.increment()
+        }
+
+        fun sendBufferFull() {
+            sendBufferFullDrops.increment()
+        }
+
         fun incomingPacketDropped() {
             incomingPacketsDropped.increment()
         }
@@ -177,18 +551,28 @@ class UdpTransport @JvmOverloads @Throws(SocketException::class, UnknownHostExce
             outgoingPacketsDropped.increment()
         }
 
-        fun toJson(): OrderedJsonObject = OrderedJsonObject().apply {
+        fun toJson(sendQueueDepth: Int): OrderedJsonObject = OrderedJsonObject().apply {
             put("packets_received", packetsReceived.sum())
             put("receive_packet_rate_pps", receivePacketRate.rate)
             put("incoming_packets_dropped", incomingPacketsDropped.sum())
             put("bytes_received", bytesReceived.sum())
+            put("batches_received", batchesReceived.sum())
             put("packets_sent", packetsSent.sum())
             put("send_packet_rate_pps", sendPacketRate.rate)
             put("outgoing_packets_dropped", outgoingPacketsDropped.sum())
             put("bytes_sent", bytesSent.sum())
+            put("send_queue_depth", sendQueueDepth)
+            put("send_queue_flushes", sendQueueFlushes.sum())
+            put("send_queue_average_flush_size", averageFlushSize())
+            put("send_queue_max_flush_size", maxFlushSize.get())
+            put("send_queue_full_drops", sendQueueFullDrops.sum())
+            put("send_buffer_full_drops", sendBufferFullDrops.sum())
         }
 
-        fun toSnapshot(): StatsSnapshot = StatsSnapshot(
+        private fun averageFlushSize(): Double =
+            sendQueueFlushes.sum().let { if (it == 0L) 0.0 else packetsFlushed.sum().toDouble() / it }
+
+        fun toSnapshot(sendQueueDepth: Int): StatsSnapshot = StatsSnapshot(
             packetsReceived = packetsReceived.sum(),
             bytesReceived = bytesReceived.sum(),
             incomingPacketsDropped = incomingPacketsDropped.sum(),
@@ -198,7 +582,12 @@ class UdpTransport @JvmOverloads @Throws(SocketException::class, UnknownHostExce
             receivePacketRate = receivePacketRate.rate,
             receiveBitRate = receiveBitRate.rate.bps.toLong(),
             sendPacketRate = sendPacketRate.rate,
-            sendBitRate = sendBitRate.rate.bps.toLong()
+            sendBitRate = sendBitRate.rate.bps.toLong(),
+            batchesReceived = batchesReceived.sum(),
+            sendQueueDepth = sendQueueDepth,
+            sendQueueFlushes = sendQueueFlushes.sum(),
+            sendQueueAverageFlushSize = averageFlushSize(),
+            sendBufferFullDrops = sendBufferFullDrops.sum()
         )
 
         companion object {
@@ -217,7 +606,12 @@ class UdpTransport @JvmOverloads @Throws(SocketException::class, UnknownHostExce
         val receivePacketRate: Long,
         val receiveBitRate: Long,
         val sendPacketRate: Long,
-        val sendBitRate: Long
+        val sendBitRate: Long,
+        val batchesReceived: Long,
+        val sendQueueDepth: Int,
+        val sendQueueFlushes: Long,
+        val sendQueueAverageFlushSize: Double,
+        val sendBufferFullDrops: Long
     )
 
     interface IncomingDataHandler {
@@ -225,10 +619,54 @@ class UdpTransport @JvmOverloads @Throws(SocketException::class, UnknownHostExce
          * Notify the handler that data was received (contained
          * within [data] at [offset] with [length]) at [receivedTime])
          *
-         * Note that the handler does *not* own the buffer, and must copy if they
-         * want to modify it or keep it longer than the duration of the
-         * [dataReceived] call.
+         * The handler *does* own the buffer, which comes from [ByteBufferPool],
+         * and must return it to the pool when done. The data is placed so that
+         * there is room for [RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET] bytes
+         * before it and [Packet.BYTES_TO_LEAVE_AT_END_OF_PACKET] after it, so
+         * the buffer can be used for an RTP packet without a copy.
          */
         fun dataReceived(data: ByteArray, offset: Int, length: Int, receivedTime: Instant)
+
+        /**
+         * Notify the handler that a batch of datagrams was received.  The
+         * handler owns the buffers in [batch] (but not the [batch] instance
+         * itself).
+         *
+         * The default implementation passes each datagram to [dataReceived].
+         */
+        fun dataReceived(batch: DatagramBatch) {
+            batch.forEach { buf, off, len -> dataReceived(buf, off, len, batch.receivedTime) }
+        }
+    }
+
+    companion object {
+        /**
+         * The largest datagram we read.
+         */
+        const val RECEIVE_BUFFER_SIZE = 1500
+
+        private val BYTES_TO_LEAVE_AT_START = RtpPacket.BYTES_TO_LEAVE_AT_START_OF_PACKET
+
+        /**
+         * The size of the buffers we request from the pool, so that a datagram
+         * of [RECEIVE_BUFFER_SIZE] bytes fits after the room reserved at their
+         * start and end.
+         */
+        private val RECEIVE_ALLOCATION_SIZE =
+            RECEIVE_BUFFER_SIZE + BYTES_TO_LEAVE_AT_START + Packet.BYTES_TO_LEAVE_AT_END_OF_PACKET
+
+        private val EMPTY_BUFFER = ByteArray(0)
+
+        /**
+         * The largest payload of a UDP datagram.
+         */
+        private const val MAX_DATAGRAM_SIZE = 65507
+
+        /**
+         * The maximum length of a datagram which can be read into this buffer
+         * while leaving the room reserved at its start and end.
+         */
+        private fun ByteArray.receiveCapacity(): Int =
+            size - BYTES_TO_LEAVE_AT_START - Packet.BYTES_TO_LEAVE_AT_END_OF_PACKET
     }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.util.config
+
+import org.jitsi.config.JitsiConfig
+import org.jitsi.metaconfig.config
+import org.jitsi.metaconfig.from
+
+class BufferPoolConfig {
+    /**
+     * Whether socket I/O should go through buffers from the pool of direct
+     * (off-heap) memory.
+     */
+    val directEnabled: Boolean by config("videobridge.buffer-pool.direct.enabled".from(JitsiConfig.newConfig))
+
+    /**
+     * How many buffers to carve out of each slab of direct memory.
+     */
+    val directBuffersPerSlab: Int by config(
+        "videobridge.buffer-pool.direct.buffers-per-slab".from(JitsiConfig.newConfig)
+    )
+
+    /**
+     * The maximum number of slabs of direct memory to allocate.
+     */
+    val directMaxSlabs: Int by config("videobridge.buffer-pool.direct.max-slabs".from(JitsiConfig.newConfig))
+
+    /**
+     * The fraction of buffers (between 0 and 1) which the leak detector
+     * tracks. 0 disables leak detection.
+     */
+    val leakDetectionSampleRate: Double by config(
+        "videobridge.buffer-pool.leak-detection.sample-rate".from(JitsiConfig.newConfig)
+    )
+
+    companion object {
+        @JvmField
+        val config = BufferPoolConfig()
+    }
+}
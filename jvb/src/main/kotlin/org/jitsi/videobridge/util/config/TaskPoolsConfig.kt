@@ -0,0 +1,47 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.util.config
+
+import org.jitsi.config.JitsiConfig
+import org.jitsi.metaconfig.config
+import org.jitsi.metaconfig.from
+
+class TaskPoolsConfig {
+    /**
+     * Whether the packet processing of each endpoint should be pinned to one
+     * of a set of single-threaded executors, instead of using the shared CPU
+     * pool.
+     */
+    val cpuShardsEnabled: Boolean by config("videobridge.task-pools.cpu-shards.enabled".from(JitsiConfig.newConfig))
+
+    /**
+     * The number of single-threaded executors, or 0 to use one per available
+     * processor.
+     */
+    val numCpuShards: Int by config("videobridge.task-pools.cpu-shards.num-shards".from(JitsiConfig.newConfig))
+
+    /**
+     * The number of threads handling the messages received from endpoints,
+     * or 0 to use one per available processor.
+     */
+    val numMessageThreads: Int by config("videobridge.task-pools.message-pool.num-threads".from(JitsiConfig.newConfig))
+
+    companion object {
+        @JvmField
+        val config = TaskPoolsConfig()
+    }
+}
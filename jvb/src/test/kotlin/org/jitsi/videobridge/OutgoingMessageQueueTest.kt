@@ -0,0 +1,123 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge
+
+import io.kotest.core.spec.IsolationMode
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.shouldBe
+import org.jitsi.videobridge.message.BridgeChannelMessage
+import org.jitsi.videobridge.message.DominantSpeakerMessage
+import org.jitsi.videobridge.message.EndpointMessage
+import org.jitsi.videobridge.message.ForwardedEndpointsMessage
+import org.json.simple.JSONObject
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicLong
+
+class OutgoingMessageQueueTest : ShouldSpec() {
+    override fun isolationMode(): IsolationMode? = IsolationMode.InstancePerLeaf
+
+    private val sent = mutableListOf<BridgeChannelMessage>()
+    private var onSent: Runnable? = null
+
+    /**
+     * Sends asynchronously, so that the messages added while one is in flight stay queued until [completeSend].
+     */
+    private val queue = OutgoingMessageQueue(
+        1000,
+        Executor { it.run() },
+        OutgoingMessageQueue.Sender { message, onSent ->
+            sent.add(message)
+            this.onSent = onSent
+            false
+        }
+    )
+
+    private fun completeSend() = onSent!!.run()
+
+    init {
+        queue.add(EndpointMessage("first"))
+        should("send a message right away") {
+            sent.map { it.toJson() } shouldContainExactly listOf(EndpointMessage("first").toJson())
+        }
+        context("Messages superseded while queued") {
+            queue.add(DominantSpeakerMessage("a"))
+            queue.add(DominantSpeakerMessage("b"))
+            completeSend()
+            should("be replaced by the later message") {
+                sent.size shouldBe 2
+                (sent[1] as DominantSpeakerMessage).dominantSpeakerEndpoint shouldBe "b"
+                queue.debugState["num_coalesced"] shouldBe 1L
+            }
+        }
+        context("Control messages") {
+            queue.add(EndpointMessage("relayed"))
+            queue.add(ForwardedEndpointsMessage(listOf("a")))
+            completeSend()
+            should("be sent before relayed messages") {
+                sent[1].shouldBeForwardedEndpoints()
+                completeSend()
+                (sent[2] as EndpointMessage).to shouldBe "relayed"
+            }
+        }
+        context("When the queue is full") {
+            val relayed = EndpointMessage("relayed").apply { put("data", "x".repeat(900)) }
+            queue.add(relayed)
+            queue.add(EndpointMessage("dropped").apply { put("data", "x".repeat(900)) })
+            should("drop relayed messages") {
+                droppedCount("EndpointMessage") shouldBe 1L
+            }
+            context("and a control message is added") {
+                queue.add(ForwardedEndpointsMessage(listOf("a".repeat(200))))
+                completeSend()
+                should("drop relayed messages to make room for it") {
+                    droppedCount("EndpointMessage") shouldBe 2L
+                    sent[1].shouldBeForwardedEndpoints()
+                    completeSend()
+                    sent.size shouldBe 2
+                }
+            }
+        }
+        context("When sending a message throws") {
+            val sentAfterFailure = mutableListOf<BridgeChannelMessage>()
+            val failingQueue = OutgoingMessageQueue(
+                1000,
+                Executor { it.run() },
+                OutgoingMessageQueue.Sender { message, _ ->
+                    if (message is DominantSpeakerMessage) {
+                        throw IllegalStateException("transport failure")
+                    }
+                    sentAfterFailure.add(message)
+                    true
+                }
+            )
+            failingQueue.add(DominantSpeakerMessage("a"))
+            failingQueue.add(EndpointMessage("after"))
+            should("count it as dropped and keep sending") {
+                ((failingQueue.debugState["dropped_counts"] as JSONObject)["DominantSpeakerMessage"] as AtomicLong)
+                    .get() shouldBe 1L
+                sentAfterFailure.size shouldBe 1
+                (sentAfterFailure[0] as EndpointMessage).to shouldBe "after"
+            }
+        }
+    }
+
+    private fun BridgeChannelMessage.shouldBeForwardedEndpoints() = (this is ForwardedEndpointsMessage) shouldBe true
+
+    private fun droppedCount(type: String) =
+        ((queue.debugState["dropped_counts"] as JSONObject)[type] as AtomicLong).get()
+}
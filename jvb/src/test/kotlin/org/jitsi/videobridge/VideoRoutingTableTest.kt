@@ -0,0 +1,57 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge
+
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.collections.shouldContainExactlyInAnyOrder
+import io.mockk.every
+import io.mockk.mockk
+
+class VideoRoutingTableTest : ShouldSpec() {
+    private val a = mockk<Endpoint> { every { id } returns "a" }
+    private val b = mockk<Endpoint> { every { id } returns "b" }
+
+    init {
+        context("VideoRoutingTable") {
+            val table = VideoRoutingTable()
+            should("have no receivers initially") {
+                table.getReceivers("c").shouldBeEmpty()
+            }
+            context("when endpoints start forwarding a source") {
+                table.forwardedEndpointsChanged(a, setOf("c"))
+                table.forwardedEndpointsChanged(b, setOf("c", "d"))
+                should("route the source to them") {
+                    table.getReceivers("c").shouldContainExactlyInAnyOrder(a, b)
+                    table.getReceivers("d").shouldContainExactlyInAnyOrder(b)
+                }
+                context("and one of them stops") {
+                    table.forwardedEndpointsChanged(a, emptySet())
+                    should("keep routing to it for a while") {
+                        table.getReceivers("c").shouldContainExactlyInAnyOrder(a, b)
+                    }
+                }
+                context("and one of them is removed") {
+                    table.removeReceiver(b)
+                    should("not route to it anymore") {
+                        table.getReceivers("d").shouldBeEmpty()
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.cc.allocation
+
+import io.kotest.core.spec.IsolationMode
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.shouldBe
+import io.mockk.spyk
+import org.jitsi.test.concurrent.FakeScheduledExecutorService
+import org.jitsi.test.time.FakeClock
+import org.jitsi.utils.logging.DiagnosticContext
+import org.jitsi.utils.logging2.createLogger
+import java.time.Duration
+import java.util.concurrent.Executor
+import java.util.function.Supplier
+
+class BandwidthAllocatorTest : ShouldSpec() {
+    override fun isolationMode(): IsolationMode? = IsolationMode.InstancePerLeaf
+
+    private val scheduler: FakeScheduledExecutorService = spyk()
+    private val allocator = BandwidthAllocator<MediaSourceContainer>(
+        object : BandwidthAllocator.EventHandler {},
+        Supplier { emptyList<MediaSourceContainer>() },
+        Supplier { true },
+        createLogger(),
+        DiagnosticContext(),
+        FakeClock(),
+        LayerBitrateSnapshots(FakeClock()),
+        Duration.ofMillis(50),
+        scheduler,
+        Executor { it.run() }
+    )
+
+    /**
+     * The global stats are shared with other allocators, so only look at how they change.
+     */
+    private val statsBefore = BandwidthAllocator.getStatsJson()
+
+    private fun statDelta(name: String) =
+        (BandwidthAllocator.getStatsJson()[name] as Long) - (statsBefore[name] as Long)
+
+    private fun numTriggersCoalescedHere() = allocator.debugState["numTriggersCoalesced"]
+
+    init {
+        context("A burst of triggers") {
+            allocator.bandwidthChanged(1_000_000)
+            allocator.endpointOrderingChanged(listOf("A", "B"))
+            allocator.update(AllocationSettings())
+            should("not update before the window elapses") {
+                statDelta("num_updates") shouldBe 0L
+            }
+            context("After the window elapses") {
+                scheduler.runOne()
+                should("cause a single update") {
+                    statDelta("num_updates") shouldBe 1L
+                    statDelta("num_updates_skipped") shouldBe 0L
+                }
+                should("count the coalesced triggers") {
+                    statDelta("num_triggers_coalesced") shouldBe 2L
+                    numTriggersCoalescedHere() shouldBe 2L
+                }
+            }
+        }
+        context("After an allocation which is ideal") {
+            // There are no sources, so any allocation with a known bandwidth is ideal.
+            allocator.bandwidthChanged(1_000_000)
+            scheduler.runOne()
+            context("a burst of bandwidth increases") {
+                allocator.bandwidthChanged(2_000_000)
+                allocator.bandwidthChanged(4_000_000)
+                scheduler.runOne()
+                should("skip the update") {
+                    statDelta("num_updates") shouldBe 1L
+                    statDelta("num_updates_skipped") shouldBe 1L
+                    numTriggersCoalescedHere() shouldBe 1L
+                }
+            }
+            context("a burst of bandwidth increases and other triggers") {
+                allocator.bandwidthChanged(2_000_000)
+                allocator.endpointOrderingChanged(listOf("A", "B"))
+                allocator.bandwidthChanged(4_000_000)
+                scheduler.runOne()
+                should("not skip the update") {
+                    statDelta("num_updates") shouldBe 2L
+                    statDelta("num_updates_skipped") shouldBe 0L
+                    numTriggersCoalescedHere() shouldBe 2L
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.cc.allocation
+
+import io.kotest.core.spec.IsolationMode
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import org.jitsi.nlj.MediaSourceDesc
+import org.jitsi.nlj.RtpEncodingDesc
+import org.jitsi.nlj.RtpLayerDesc
+import org.jitsi.nlj.util.Bandwidth
+import org.jitsi.nlj.util.bps
+import org.jitsi.nlj.util.kbps
+import org.jitsi.test.time.FakeClock
+import org.jitsi.utils.ms
+
+class LayerBitrateSnapshotsTest : ShouldSpec() {
+    override fun isolationMode(): IsolationMode? = IsolationMode.InstancePerLeaf
+
+    private val clock = FakeClock()
+    private val snapshots = LayerBitrateSnapshots(clock)
+
+    private val layer1 = TestLayer(eid = 0, bitrate = 150.kbps)
+    private val layer2 = TestLayer(eid = 1, bitrate = 500.kbps)
+    private val source = MediaSourceDesc(
+        arrayOf(RtpEncodingDesc(1L, arrayOf(layer1)), RtpEncodingDesc(2L, arrayOf(layer2)))
+    )
+
+    init {
+        context("Getting a snapshot") {
+            val snapshot = snapshots.get(source)
+            should("compute the bitrates of all layers") {
+                snapshot.layers.toList() shouldContainExactly listOf(layer1, layer2)
+                snapshot.bitrates.map { it.bps } shouldContainExactly listOf(150.kbps, 500.kbps).map { it.bps }
+                snapshot.anyActive shouldBe true
+                layer1.numGetBitrateCalls shouldBe 1
+            }
+            context("Within the max age") {
+                layer1.bitrate = 300.kbps
+                clock.elapse(LayerBitrateSnapshots.MAX_AGE.minusMillis(1))
+                should("reuse the snapshot") {
+                    snapshots.get(source) shouldBeSameInstanceAs snapshot
+                    layer1.numGetBitrateCalls shouldBe 1
+                }
+            }
+            context("After the max age") {
+                layer1.bitrate = 300.kbps
+                clock.elapse(LayerBitrateSnapshots.MAX_AGE)
+                should("compute the bitrates again") {
+                    val newSnapshot = snapshots.get(source)
+                    newSnapshot.bitrates.map { it.bps } shouldContainExactly listOf(300.kbps, 500.kbps).map { it.bps }
+                    layer1.numGetBitrateCalls shouldBe 2
+                    snapshots.get(source) shouldBeSameInstanceAs newSnapshot
+                }
+            }
+        }
+        context("A source whose layers have no bitrate") {
+            layer1.bitrate = 0.bps
+            layer2.bitrate = 0.bps
+            should("not be active") {
+                snapshots.get(source).anyActive shouldBe false
+            }
+            should("be active again once a layer has a bitrate") {
+                snapshots.get(source).anyActive shouldBe false
+                layer2.bitrate = 500.kbps
+                clock.elapse(100.ms)
+                snapshots.get(source).anyActive shouldBe true
+            }
+        }
+    }
+
+    private class TestLayer(eid: Int, var bitrate: Bandwidth) :
+        RtpLayerDesc(eid, 0, -1, 180, 30.0, dependencyLayers = null) {
+        var numGetBitrateCalls = 0
+
+        override fun getBitrate(nowMs: Long): Bandwidth {
+            numGetBitrateCalls++
+            return bitrate
+        }
+    }
+}
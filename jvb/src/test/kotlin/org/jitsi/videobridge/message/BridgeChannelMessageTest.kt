@@ -25,6 +25,7 @@ import io.kotest.core.spec.style.ShouldSpec
 import io.kotest.matchers.collections.shouldContainExactly
 import io.kotest.matchers.nulls.shouldNotBeNull
 import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
 import io.kotest.matchers.types.shouldBeInstanceOf
 import org.jitsi.videobridge.cc.allocation.VideoConstraints
 import org.jitsi.videobridge.message.BridgeChannelMessage.Companion.parse
@@ -48,6 +49,15 @@ class BridgeChannelMessageTest : ShouldSpec() {
                 parsedColibriClass as String
                 parsedColibriClass shouldBe message.type
             }
+            should("serialize a message for sending only once") {
+                // Uses the default (Jackson) serialization.
+                val message = ClientHelloMessage()
+
+                val json = message.toJsonForSending()
+                message.toJsonForSending() shouldBeSameInstanceAs json
+                json shouldBe message.toJson()
+                (JSONParser().parse(json) as JSONObject).keys shouldContainExactly setOf("colibriClass")
+            }
         }
         context("parsing and serializing a SelectedEndpointsChangedEvent message") {
             val parsed = parse(SELECTED_ENDPOINTS_MESSAGE)
@@ -119,6 +129,95 @@ class BridgeChannelMessageTest : ShouldSpec() {
             }
         }
 
+        context("the shared reader and writer") {
+            // A sample of each message type.
+            val messages = listOf(
+                SelectedEndpointsMessage(listOf("a", "b")),
+                SelectedEndpointMessage("a"),
+                ClientHelloMessage(),
+                ServerHelloMessage("v"),
+                EndpointMessage("to_value").apply { put("other_field", "other_value") },
+                LastNMessage(3),
+                ReceiverVideoConstraintMessage(360),
+                DominantSpeakerMessage("a"),
+                EndpointConnectionStatusMessage("a", true),
+                ForwardedEndpointsMessage(listOf("a")),
+                SenderVideoConstraintsMessage(180),
+                AddReceiverMessage("bridge", "a", VideoConstraints(360)),
+                RemoveReceiverMessage("bridge", "a"),
+                ReceiverVideoConstraintsMessage(
+                    lastN = 2,
+                    selectedEndpoints = listOf("a"),
+                    onStageEndpoints = listOf("b"),
+                    defaultConstraints = VideoConstraints(180),
+                    constraints = mapOf("a" to VideoConstraints(720))
+                )
+            )
+            // The reader and writer as they were created for every message before they were shared.
+            val oldMapper = jacksonObjectMapper()
+            fun oldToJson(message: BridgeChannelMessage) = ObjectMapper().writeValueAsString(message)
+
+            should("cover every message type") {
+                messages.map { it::class }.toSet() shouldBe BridgeChannelMessage::class.sealedSubclasses.toSet()
+            }
+            should("parse messages the same way as a new mapper") {
+                messages.forEach {
+                    val json = it.toJson()
+                    val parsed = parse(json)
+                    val parsedByOldMapper: BridgeChannelMessage = oldMapper.readValue(json)
+                    parsed::class shouldBe it::class
+                    oldMapper.readTree(oldToJson(parsed)) shouldBe oldMapper.readTree(oldToJson(parsedByOldMapper))
+                }
+            }
+            should("serialize messages the same way as a new mapper") {
+                messages.filter {
+                    // Only the types which don't have a custom serializer use the shared writer.
+                    it::class.java.getMethod("toJson").declaringClass == BridgeChannelMessage::class.java
+                }.forEach {
+                    it.toJson() shouldBe oldToJson(it)
+                }
+            }
+        }
+
+        context("parsing EndpointMessage for relay") {
+            fun parseForRelay(): EndpointMessage {
+                val relayed = EndpointMessage.parseForRelay(ENDPOINT_MESSAGE)
+                relayed.shouldNotBeNull()
+                relayed.to shouldBe "to_value"
+                return relayed
+            }
+
+            should("splice in the sender and preserve the other fields") {
+                val relayed = parseForRelay().apply { from = "from_value" }
+                val parsed = parse(relayed.toJson())
+                parsed as EndpointMessage
+                parsed.from shouldBe "from_value"
+                parsed.to shouldBe "to_value"
+                parsed.otherFields["other_field1"] shouldBe "other_value1"
+                parsed.otherFields["other_field2"] shouldBe 97
+            }
+            should("parse the other fields when they are accessed") {
+                val relayed = parseForRelay().apply { from = "from_value" }
+                relayed.otherFields["other_field2"] shouldBe 97
+                relayed.otherFields.containsKey("colibriClass") shouldBe false
+
+                val parsed = parse(relayed.toJson())
+                parsed as EndpointMessage
+                parsed.from shouldBe "from_value"
+                parsed.otherFields["other_field1"] shouldBe "other_value1"
+            }
+            should("fall back to a full parse for other messages") {
+                EndpointMessage.parseForRelay(ClientHelloMessage().toJson()) shouldBe null
+                EndpointMessage.parseForRelay(
+                    EndpointMessage("to_value").apply { from = "spoofed" }.toJson()
+                ) shouldBe null
+                EndpointMessage.parseForRelay("{\"colibriClass\": \"EndpointMessage\"") shouldBe null
+                EndpointMessage.parseForRelay(
+                    "{\"colibriClass\": \"LastNChangedEvent\", \"note\": \"EndpointMessage\", \"lastN\": 1}"
+                ) shouldBe null
+            }
+        }
+
         context("serializing and parsing DominantSpeakerMessage") {
             val id = "abc123"
             val original = DominantSpeakerMessage(id)
@@ -249,6 +348,50 @@ class BridgeChannelMessageTest : ShouldSpec() {
                 parsed.defaultConstraints shouldBe null
                 parsed.constraints shouldBe null
             }
+
+            context("With the streaming parser") {
+                val mapper = jacksonObjectMapper()
+                fun toTree(message: BridgeChannelMessage) = mapper.readTree(ObjectMapper().writeValueAsString(message))
+
+                should("parse the same as Jackson") {
+                    listOf(
+                        RECEIVER_VIDEO_CONSTRAINTS,
+                        RECEIVER_VIDEO_CONSTRAINTS_EMPTY,
+                        ReceiverVideoConstraintsMessage(lastN = 1, constraints = emptyMap()).toJson(),
+                        ReceiverVideoConstraintsMessage(
+                            defaultConstraints = VideoConstraints(360, 15.0),
+                            selectedEndpoints = emptyList()
+                        ).toJson(),
+                        // Unknown fields of VideoConstraints are ignored.
+                        """{"colibriClass":"ReceiverVideoConstraints","defaultConstraints":{"maxHeight":1,"x":[1]}}"""
+                    ).forEach {
+                        val parsed = ReceiverVideoConstraintsMessage.parseFast(it)
+                        parsed.shouldNotBeNull()
+                        toTree(parsed) shouldBe toTree(mapper.readValue<BridgeChannelMessage>(it))
+                    }
+                }
+                should("leave unusual messages to Jackson") {
+                    listOf(
+                        LastNMessage(3).toJson(),
+                        // Unknown fields are errors.
+                        """{"colibriClass":"ReceiverVideoConstraints","unknown":1}""",
+                        // Values which Jackson coerces.
+                        """{"colibriClass":"ReceiverVideoConstraints","lastN":"3"}""",
+                        """{"colibriClass":"ReceiverVideoConstraints","defaultConstraints":{"maxHeight":"180"}}""",
+                        // Invalid JSON.
+                        """{"colibriClass":"ReceiverVideoConstraints","lastN":3"""
+                    ).forEach {
+                        ReceiverVideoConstraintsMessage.parseFast(it) shouldBe null
+                    }
+
+                    shouldThrow<JsonProcessingException> {
+                        parse("""{"colibriClass":"ReceiverVideoConstraints","unknown":1}""")
+                    }
+                    val coerced = parse("""{"colibriClass":"ReceiverVideoConstraints","lastN":"3"}""")
+                    coerced as ReceiverVideoConstraintsMessage
+                    coerced.lastN shouldBe 3
+                }
+            }
         }
     }
 
@@ -30,6 +30,11 @@ class OctoPacketTest : ShouldSpec() {
                 OctoPacket.readEndpointId(octoHeader, 0, octoHeader.size) shouldBe "abcdabcd"
                 OctoPacket.readMediaType(octoHeader, 0, octoHeader.size) shouldBe MediaType.VIDEO
             }
+            should("read the endpoint ID in numeric form") {
+                OctoPacket.readEndpointIdNumber(octoHeader, 0, octoHeader.size) shouldBe 0xabcdabcdL
+                OctoPacket.endpointIdToNumber("abcdabcd") shouldBe 0xabcdabcdL
+                OctoPacket.endpointIdToString(0xabcdabcdL) shouldBe "abcdabcd"
+            }
             should("fail when the length is insufficient") {
                 shouldThrow<IllegalArgumentException> {
                     OctoPacket.readEndpointId(byteArrayOf(0, 0, 0, 0, 0), 0, 0)
@@ -44,6 +49,11 @@ class OctoPacketTest : ShouldSpec() {
                 OctoPacket.readEndpointId(octoHeader, 0, octoHeader.size) shouldBe "1234abcd"
                 OctoPacket.readMediaType(octoHeader, 0, octoHeader.size) shouldBe MediaType.AUDIO
             }
+            should("reject endpoint IDs which don't fit in the header") {
+                shouldThrow<NumberFormatException> {
+                    OctoPacket.writeHeaders(ByteArray(12), 0, MediaType.AUDIO, 111222, "1234abcd1")
+                }
+            }
             should("fail when the length is insufficient") {
                 val octoHeader = ByteArray(11)
                 shouldThrow<IllegalArgumentException> {
@@ -0,0 +1,142 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.transport.octo
+
+import io.kotest.core.spec.IsolationMode
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.collections.shouldHaveSize
+import io.kotest.matchers.shouldBe
+import io.mockk.spyk
+import org.jitsi.test.concurrent.FakeScheduledExecutorService
+import org.jitsi.utils.MediaType
+import org.jitsi.videobridge.octo.OctoPacket
+import org.jitsi.videobridge.octo.OctoPacket.BATCH_ENTRY_HEADER_LENGTH
+import org.jitsi.videobridge.octo.OctoPacket.OCTO_HEADER_LENGTH
+import java.net.InetSocketAddress
+import java.net.SocketAddress
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+class OctoPacketBatcherTest : ShouldSpec() {
+    override fun isolationMode(): IsolationMode? = IsolationMode.InstancePerLeaf
+
+    private val executor: FakeScheduledExecutorService = spyk()
+    private val sent = mutableListOf<Datagram>()
+    private val batcher = OctoPacketBatcher(200, Duration.ofMillis(2), executor) { buf, off, len, targets ->
+        targets.forEach { sent.add(Datagram(buf.copyOfRange(off, off + len), it)) }
+    }
+
+    private val target1 = InetSocketAddress("127.0.0.1", 4096)
+    private val target2 = InetSocketAddress("127.0.0.2", 4096)
+
+    init {
+        context("Packets which fit in a batch") {
+            batcher.add(octoPacket(1, 50), 0, 50 + OCTO_HEADER_LENGTH, listOf(target1, target2))
+            batcher.add(octoPacket(2, 50), 0, 50 + OCTO_HEADER_LENGTH, listOf(target1))
+            should("not be sent right away") {
+                sent.shouldBeEmpty()
+            }
+            context("After the max delay") {
+                executor.runOne()
+                should("be sent in one batch per target") {
+                    sent shouldHaveSize 2
+                    val batch = sent.first { it.target == target1 }
+                    OctoPacket.isBatch(batch.data, 0, batch.data.size) shouldBe true
+                    batch.data.size shouldBe OCTO_HEADER_LENGTH + 2 * (BATCH_ENTRY_HEADER_LENGTH + 50 + OCTO_HEADER_LENGTH)
+                    OctoPacket.readBatchEntryLength(batch.data, OCTO_HEADER_LENGTH) shouldBe 50 + OCTO_HEADER_LENGTH
+                }
+                should("send a single packet without a batch header") {
+                    val datagram = sent.first { it.target == target2 }
+                    OctoPacket.isBatch(datagram.data, 0, datagram.data.size) shouldBe false
+                    OctoPacket.readConferenceId(datagram.data, 0, datagram.data.size) shouldBe 1
+                    datagram.data.size shouldBe 50 + OCTO_HEADER_LENGTH
+                }
+            }
+        }
+        context("A packet which doesn't fit in the pending batch") {
+            batcher.add(octoPacket(1, 100), 0, 100 + OCTO_HEADER_LENGTH, listOf(target1))
+            batcher.add(octoPacket(2, 100), 0, 100 + OCTO_HEADER_LENGTH, listOf(target1))
+            should("cause the pending batch to be sent") {
+                sent shouldHaveSize 1
+                OctoPacket.readConferenceId(sent[0].data, 0, sent[0].data.size) shouldBe 1
+            }
+        }
+        context("A packet which is too large to be batched") {
+            batcher.add(octoPacket(1, 50), 0, 50 + OCTO_HEADER_LENGTH, listOf(target1))
+            batcher.add(octoPacket(2, 300), 0, 300 + OCTO_HEADER_LENGTH, listOf(target1))
+            should("be sent right away, after the pending packets") {
+                sent shouldHaveSize 2
+                OctoPacket.readConferenceId(sent[0].data, 0, sent[0].data.size) shouldBe 1
+                OctoPacket.readConferenceId(sent[1].data, 0, sent[1].data.size) shouldBe 2
+            }
+        }
+        context("Removing a target") {
+            batcher.add(octoPacket(1, 50), 0, 50 + OCTO_HEADER_LENGTH, listOf(target1))
+            batcher.removeTarget(target1)
+            should("send its pending packets right away") {
+                sent shouldHaveSize 1
+                sent[0].target shouldBe target1
+            }
+            should("not send them again when the scheduled flush runs") {
+                executor.runOne()
+                sent shouldHaveSize 1
+            }
+        }
+        context("Batches taken by different threads") {
+            val sentConferenceIds = mutableListOf<Long>()
+            val sending = CountDownLatch(1)
+            val release = CountDownLatch(1)
+            val blockingBatcher = OctoPacketBatcher(200, Duration.ofMillis(2), executor) { buf, off, len, _ ->
+                val conferenceId = OctoPacket.readConferenceId(buf, off, len)
+                if (conferenceId == 1L) {
+                    sending.countDown()
+                    release.await()
+                }
+                synchronized(sentConferenceIds) { sentConferenceIds.add(conferenceId) }
+            }
+            blockingBatcher.add(octoPacket(1, 100), 0, 100 + OCTO_HEADER_LENGTH, listOf(target1))
+            // Takes the batch with packet 1, and blocks while sending it.
+            val first = thread {
+                blockingBatcher.add(octoPacket(2, 100), 0, 100 + OCTO_HEADER_LENGTH, listOf(target1))
+            }
+            sending.await(5, TimeUnit.SECONDS) shouldBe true
+            // Takes the batch with packet 2 while the first one is still being sent.
+            val second = thread {
+                blockingBatcher.add(octoPacket(3, 100), 0, 100 + OCTO_HEADER_LENGTH, listOf(target1))
+            }
+            while (second.isAlive && second.state != Thread.State.BLOCKED) {
+                Thread.sleep(1)
+            }
+            release.countDown()
+            first.join(5000)
+            second.join(5000)
+            should("be sent in order") {
+                sentConferenceIds shouldBe listOf(1L, 2L)
+            }
+        }
+    }
+
+    private fun octoPacket(conferenceId: Long, payloadLength: Int): ByteArray =
+        ByteArray(OCTO_HEADER_LENGTH + payloadLength).also {
+            OctoPacket.writeHeaders(it, 0, MediaType.AUDIO, conferenceId, "abcdabcd")
+        }
+
+    private class Datagram(val data: ByteArray, val target: SocketAddress)
+}
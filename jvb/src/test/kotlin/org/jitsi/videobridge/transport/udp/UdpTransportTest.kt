@@ -0,0 +1,92 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.transport.udp
+
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.shouldBe
+import org.jitsi.utils.logging2.createLogger
+import org.jitsi.videobridge.util.ByteBufferPool
+import java.net.DatagramPacket
+import java.net.DatagramSocket
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.time.Instant
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+import kotlin.random.Random
+
+class UdpTransportTest : ShouldSpec() {
+    private val logger = createLogger()
+
+    init {
+        context("Receiving a full-size datagram") {
+            should("deliver it intact when reading single datagrams") {
+                receive(receiveBatchSize = 1)
+            }
+            should("deliver it intact when reading in batches") {
+                receive(receiveBatchSize = 8)
+            }
+        }
+        context("Enqueueing a datagram after the transport has stopped") {
+            val port = DatagramSocket(0, InetAddress.getLoopbackAddress()).use { it.localPort }
+            val transport = UdpTransport("127.0.0.1", port, logger, sendQueueSize = 16)
+            transport.stop()
+            transport.enqueue(
+                ByteBufferPool.getBuffer(100),
+                0,
+                100,
+                listOf(InetSocketAddress(InetAddress.getLoopbackAddress(), port))
+            )
+            val stats = transport.getStatsJson()
+            should("count it as dropped") {
+                stats["outgoing_packets_dropped"] shouldBe 1L
+            }
+            should("not count it as a full send queue") {
+                stats["send_queue_full_drops"] shouldBe 0L
+            }
+        }
+    }
+
+    private fun receive(receiveBatchSize: Int) {
+        val port = DatagramSocket(0, InetAddress.getLoopbackAddress()).use { it.localPort }
+        val transport = UdpTransport("127.0.0.1", port, logger, receiveBatchSize = receiveBatchSize)
+        val received = LinkedBlockingQueue<ByteArray>()
+        transport.incomingDataHandler = object : UdpTransport.IncomingDataHandler {
+            override fun dataReceived(data: ByteArray, offset: Int, length: Int, receivedTime: Instant) {
+                received.add(data.copyOfRange(offset, offset + length))
+            }
+        }
+        val reader = thread { transport.startReadingData() }
+
+        try {
+            val payload = Random(1234).nextBytes(UdpTransport.RECEIVE_BUFFER_SIZE)
+            DatagramSocket().use {
+                it.send(DatagramPacket(payload, payload.size, InetAddress.getLoopbackAddress(), port))
+            }
+
+            val datagram = received.poll(5, TimeUnit.SECONDS)
+            datagram.shouldNotBeNull()
+            datagram.size shouldBe payload.size
+            datagram.contentEquals(payload) shouldBe true
+        } finally {
+            transport.stop()
+            reader.join(5000)
+        }
+    }
+}
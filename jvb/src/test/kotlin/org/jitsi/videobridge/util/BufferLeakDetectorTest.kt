@@ -0,0 +1,96 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.util
+
+import io.kotest.core.spec.IsolationMode
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.string.shouldContain
+import org.jitsi.nlj.util.OrderedJsonObject
+
+class BufferLeakDetectorTest : ShouldSpec() {
+    override fun isolationMode(): IsolationMode? = IsolationMode.InstancePerLeaf
+
+    private val detector = BufferLeakDetector(1.0)
+
+    init {
+        context("A buffer which is returned") {
+            val buf = ByteArray(100)
+            detector.bufferRequested(buf)
+            val record = detector.getRecord(buf)
+            detector.bufferReturned(buf)
+            should("no longer be tracked") {
+                record.shouldNotBeNull()
+                detector.getRecord(buf).shouldBeNull()
+                detector.getStats()["num_outstanding_tracked"] shouldBe 0
+            }
+            should("not be reported, even if its record is enqueued") {
+                record.shouldNotBeNull().enqueue()
+                val stats = detector.getStats()
+                stats["num_tracked"] shouldBe 1L
+                stats["num_leaks"] shouldBe 0L
+            }
+        }
+        context("A buffer which is not returned") {
+            val buf = ByteArray(100)
+            detector.bufferRequested(buf)
+            detector.touch(buf, "some node")
+            // What the garbage collector does once the buffer is unreachable.
+            detector.getRecord(buf).shouldNotBeNull().enqueue()
+            val stats = detector.getStats()
+            should("be reported as a leak") {
+                stats["num_leaks"] shouldBe 1L
+                stats["num_outstanding_tracked"] shouldBe 0
+            }
+            should("be reported with its allocation site") {
+                val bySite = stats["leaks_by_allocation_site"] as OrderedJsonObject
+                bySite.size shouldBe 1
+                bySite.keys.first() shouldContain BufferLeakDetectorTest::class.java.name
+                bySite.values.first() shouldBe 1L
+            }
+            should("be reported with the last place which touched it") {
+                (stats["leaks_by_last_touch"] as OrderedJsonObject)["some node"] shouldBe 1L
+            }
+        }
+        context("Leaks from more than the maximum number of sites") {
+            val buffers = List(150) { ByteArray(100) }
+            buffers.forEachIndexed { i, buf ->
+                detector.bufferRequested(buf)
+                detector.touch(buf, "node $i")
+            }
+            buffers.forEach { detector.getRecord(it).shouldNotBeNull().enqueue() }
+            val stats = detector.getStats()
+            should("count the rest as other") {
+                stats["num_leaks"] shouldBe 150L
+                val byLastTouch = stats["leaks_by_last_touch"] as OrderedJsonObject
+                byLastTouch.size shouldBe 101
+                byLastTouch["other"] shouldBe 50L
+            }
+        }
+        context("With a sample rate of 0") {
+            val unsampled = BufferLeakDetector(0.0)
+            val buf = ByteArray(100)
+            unsampled.bufferRequested(buf)
+            should("not track buffers") {
+                unsampled.getRecord(buf).shouldBeNull()
+                unsampled.getStats()["num_tracked"] shouldBe 0L
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.util
+
+import io.kotest.core.spec.IsolationMode
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+
+class DirectByteBufferPoolTest : ShouldSpec() {
+    override fun isolationMode(): IsolationMode? = IsolationMode.InstancePerLeaf
+
+    private val pool = DirectByteBufferPool(100, 2, 2)
+
+    init {
+        context("Getting buffers") {
+            val buffers = List(4) { pool.buffer }
+            should("carve them out of slabs of direct memory") {
+                buffers.forEach {
+                    it.isDirect shouldBe true
+                    it.capacity() shouldBe 100
+                    it.position() shouldBe 0
+                    it.limit() shouldBe 100
+                }
+                pool.stats["num_slabs"] shouldBe 2
+                pool.stats["num_outstanding"] shouldBe 4
+            }
+            should("not let them overlap") {
+                buffers.forEachIndexed { i, buf -> buf.put(0, i.toByte()) }
+                buffers.forEachIndexed { i, buf -> buf.get(0) shouldBe i.toByte() }
+            }
+            context("When the pool is exhausted") {
+                val fallback = pool.buffer
+                should("fall back to heap buffers") {
+                    fallback.isDirect shouldBe false
+                    fallback.capacity() shouldBe 100
+                    pool.stats["num_heap_fallbacks"] shouldBe 1L
+                }
+                should("not take the heap buffers back") {
+                    pool.returnBuffer(fallback)
+                    pool.stats["num_available"] shouldBe 0
+                }
+            }
+            context("Returning a buffer") {
+                buffers[0].position(10)
+                pool.returnBuffer(buffers[0])
+                should("make it available again, cleared") {
+                    pool.stats["num_available"] shouldBe 1
+                    val buf = pool.buffer
+                    buf shouldBeSameInstanceAs buffers[0]
+                    buf.position() shouldBe 0
+                    pool.stats["num_slabs"] shouldBe 2
+                }
+            }
+        }
+    }
+}
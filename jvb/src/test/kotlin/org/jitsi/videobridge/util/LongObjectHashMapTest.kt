@@ -0,0 +1,62 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.util
+
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.shouldBe
+import kotlin.random.Random
+
+class LongObjectHashMapTest : ShouldSpec() {
+    init {
+        context("LongObjectHashMap") {
+            should("behave like a HashMap") {
+                val map = LongObjectHashMap<String>()
+                val reference = HashMap<Long, String>()
+                val random = Random(1234)
+
+                repeat(100_000) {
+                    // Use a small key space, so that we hit existing keys.
+                    val key = random.nextLong(0, 500) * 0x1_0000_0001L
+                    when (random.nextInt(3)) {
+                        0, 1 -> map.put(key, "$it") shouldBe reference.put(key, "$it")
+                        else -> map.remove(key) shouldBe reference.remove(key)
+                    }
+                    map.size() shouldBe reference.size
+                }
+
+                reference.forEach { (key, value) -> map.get(key) shouldBe value }
+                var count = 0
+                map.forEach { key, value ->
+                    reference[key] shouldBe value
+                    count++
+                }
+                count shouldBe reference.size
+            }
+            should("copy independently") {
+                val map = LongObjectHashMap<String>()
+                map.put(1, "a")
+                val copy = LongObjectHashMap(map)
+                copy.put(2, "b")
+                copy.remove(1)
+                map.get(1) shouldBe "a"
+                map.get(2) shouldBe null
+                copy.get(1) shouldBe null
+                copy.get(2) shouldBe "b"
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.util
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.shouldBe
+import org.jitsi.nlj.stats.DelayStats
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+
+class SerialExecutorTest : ShouldSpec() {
+    init {
+        context("SerialExecutor") {
+            // Holds the tasks handed to the underlying executor, so that the test controls when they run.
+            val pending = mutableListOf<Runnable>()
+            val serialExecutor = SerialExecutor(Executor { pending.add(it) }, 2, DelayStats(longArrayOf(0, 1)))
+            val ran = mutableListOf<Int>()
+
+            serialExecutor.execute { ran.add(1) }
+            serialExecutor.execute { ran.add(2) }
+            should("hand a single task to the underlying executor") {
+                pending.size shouldBe 1
+            }
+            should("reject tasks when the queue is full") {
+                shouldThrow<RejectedExecutionException> {
+                    serialExecutor.execute { ran.add(3) }
+                }
+            }
+            should("run the tasks in order") {
+                while (pending.isNotEmpty()) {
+                    pending.removeAt(0).run()
+                }
+                ran shouldContainExactly listOf(1, 2)
+                serialExecutor.queueSize shouldBe 0
+            }
+        }
+    }
+}
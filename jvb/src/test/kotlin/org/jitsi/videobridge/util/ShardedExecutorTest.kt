@@ -0,0 +1,52 @@
+/*
+ * Copyright @ 2020 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jitsi.videobridge.util
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.ShouldSpec
+import io.kotest.matchers.shouldBe
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+class ShardedExecutorTest : ShouldSpec() {
+    init {
+        context("A shard with a bounded queue") {
+            should("reject tasks when the queue is full") {
+                val executor = ShardedExecutor("test", 1, 1)
+                val started = CountDownLatch(1)
+                val release = CountDownLatch(1)
+                try {
+                    // Keep the shard's thread busy, so that the next task stays queued.
+                    executor.getShard(0L).execute {
+                        started.countDown()
+                        release.await()
+                    }
+                    started.await(5, TimeUnit.SECONDS) shouldBe true
+                    executor.getShard(0L).execute { }
+
+                    shouldThrow<RejectedExecutionException> {
+                        executor.getShard(0L).execute { }
+                    }
+                } finally {
+                    release.countDown()
+                    executor.shutdownNow()
+                }
+            }
+        }
+    }
+}